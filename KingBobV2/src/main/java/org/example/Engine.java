@@ -20,8 +20,7 @@ Evaluation:
 - Total material (weighted by number of pieces)
 - Piece square table (weighted by number of pieces)
 - Simple mobility
-- Doubled pawns punishment
-- Reward passed pawns
+- Pawn structure (passed, doubled, isolated and backward pawns, cached in a pawn hash table)
  */
 
 public class Engine{
@@ -60,15 +59,14 @@ public class Engine{
         int bestChoiceDepth = 1;
         // Time manager class
         SearchManager timeManager = new SearchManager(searchTime);
-        // We have to reset TT if it overflows
-        if (TT.getCapacity() >= 100){
-            TT.clear();
-        }
+        // Age the TT instead of clearing it so the search starts warm from the previous move
+        TT.newSearch();
         while (depth <= 64) {
             if (timeManager.shouldCancel()) {
                 break;
             }
             TOTAL_NODES = 0;
+            evaluation.getEvalCache().resetStats();
             //Starting clock
             Instant starts = Instant.now();
             //Running search
@@ -78,12 +76,13 @@ public class Engine{
             //print duration of search
             long timeElapsed = Duration.between(starts,end).toMillis();
             long nps = (long)(TOTAL_NODES / Math.max(timeElapsed / 1000.0, 0.001));
-            System.out.printf("VERSION 1.6 | Depth: %-2d | Time: %-5d | NPS: %-7d | Eval: %6.2f | Result Depth: %-2d | Line: %s%n",
+            System.out.printf("VERSION 1.6 | Depth: %-2d | Time: %-5d | NPS: %-7d | Eval: %6.2f | Result Depth: %-2d | Eval cache hits: %.1f%% | Line: %s%n",
                     depth,
                     timeElapsed,
                     nps,
                     (float)currChoice.state_value/100,
                     currChoice.depth,
+                    evaluation.getEvalCache().getHitRate(),
                     currChoice.main_line
             );
             //Avoid taking none completed search
@@ -166,20 +165,20 @@ public class Engine{
         }
 
         // Transposition table lookup
-        TranspositionTable.Entry entry = TT.getEntry(board.getZobristKey());
-        if (entry != null && entry.depth >= depth && ply > 0) {
-            int entryValue = entry.value;
-            Move entryMove = entry.move;
-            List<Move> entryLine = entry.mainLine;
-            int entryDepth = entry.depth;
+        long entry = TT.probe(board.getZobristKey());
+        if (entry != TranspositionTable.EMPTY && TranspositionTable.getDepth(entry) >= depth && ply > 0) {
+            int entryValue = TranspositionTable.getValue(entry);
+            Move entryMove = TranspositionTable.getMove(entry);
+            int entryDepth = TranspositionTable.getDepth(entry);
+            FLAG entryFlag = TranspositionTable.getFlag(entry);
 
             // Adjust the bestValue based on the flag
-            if (entry.flag == FLAG.EXACT) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
-            } else if (entry.flag == FLAG.LOWER && entryValue > beta) {
-                return new MinimaxInfo(beta, entryMove, entryLine, entryDepth);
-            } else if (entry.flag == FLAG.UPPER && entryValue <= alpha) {
-                return new MinimaxInfo(alpha, entryMove, entryLine, entryDepth);
+            if (entryFlag == FLAG.EXACT) {
+                return new MinimaxInfo(entryValue, entryMove, null, entryDepth);
+            } else if (entryFlag == FLAG.LOWER && entryValue > beta) {
+                return new MinimaxInfo(beta, entryMove, null, entryDepth);
+            } else if (entryFlag == FLAG.UPPER && entryValue <= alpha) {
+                return new MinimaxInfo(alpha, entryMove, null, entryDepth);
             }
         }
 
@@ -235,7 +234,7 @@ public class Engine{
         } else {
             flag = FLAG.UPPER;
         }
-        TT.store(board.getZobristKey(),  depth, bestValue, flag, bestMove, bestLine);
+        TT.store(board.getZobristKey(),  depth, bestValue, flag, bestMove);
         return new MinimaxInfo(bestValue, bestMove, bestLine, depth);
     }
 
@@ -8,6 +8,25 @@ import com.github.bhlangonijr.chesslib.Side;
 public class Evaluation {
     PieceSquareTable piece_table = new PieceSquareTable();
     private static final int MATE_SCORE = 5000;
+    // Static evals by Zobrist key, eval walks every piece type several times so a hit saves most of a node
+    // Null when caching is turned off
+    private final EvalCache evalCache;
+    // Passed, doubled, isolated and backward pawns by pawn structure
+    private final PawnTable pawnTable;
+
+    public Evaluation(){
+        this(2, 1);
+    }
+
+    // Sizes of 0 for users that only read piece values (Helper): no eval cache and a single entry pawn table
+    public Evaluation(int evalCacheMb, int pawnTableMb){
+        evalCache = evalCacheMb > 0 ? new EvalCache(evalCacheMb) : null;
+        pawnTable = new PawnTable(pawnTableMb);
+    }
+
+    public EvalCache getEvalCache(){
+        return evalCache;
+    }
 
     public int pieceWorthMg(PieceType pieceType){
         return switch (pieceType) {
@@ -111,71 +130,29 @@ public class Evaluation {
         return 0; // No checkmate
     }
 
-    private int doubledPawns(Board board){
-        long blackPawnBitboard = board.getBitboard(Piece.BLACK_PAWN);
-        long whitePawnBitboard = board.getBitboard(Piece.WHITE_PAWN);
-        // This value seems good for this engine
-        double penalizeScore = 13;
-        int doubledPawnsWhiteCount = 0;
-        int doubledPawnsBlackCount = 0;
-        // Check each file (a through h)
-        for (int file = 0; file < 8; file++) {
-            // Create a mask for the current file
-            long fileMask = 0x0101010101010101L << file;
-
-            // Count pawns on this file for each color
-            int whitePawnsInFile = Long.bitCount(whitePawnBitboard & fileMask);
-            int blackPawnsInFile = Long.bitCount(blackPawnBitboard & fileMask);
-
-            // If there are 2 or more pawns in a file, add the extras to doubled count
-            if (whitePawnsInFile > 1) {
-                doubledPawnsWhiteCount += (whitePawnsInFile - 1);
-            }
-            if (blackPawnsInFile > 1) {
-                doubledPawnsBlackCount += (blackPawnsInFile - 1);
-            }
+    public int eval(Board board){
+        if (evalCache == null){
+            return evaluate(board);
         }
-        return (int)((doubledPawnsBlackCount - doubledPawnsWhiteCount) * penalizeScore);
-    }
-
-    private int passedPawns(Board board){
-        long blackPawnBitboard = board.getBitboard(Piece.BLACK_PAWN);
-        long whitePawnBitboard = board.getBitboard(Piece.WHITE_PAWN);
-        int baseReward = 10;
-        int whitePassedPawnValue = 0;
-        int blackPassedPawnValue = 0;
-
-        for (int file = 0; file < 8; file++) {
-            long fileMask = 0x0101010101010101L << file;
-            long fileMaskRight = file < 7 ? fileMask << 1 : 0;
-            long fileMaskLeft = file > 0 ? fileMask >> 1 : 0;
-
-            // Check for passed pawns
-            if ((whitePawnBitboard & fileMask) != 0 &&
-                    (blackPawnBitboard & (fileMask | fileMaskRight | fileMaskLeft)) == 0) {
-                int rank = Long.numberOfTrailingZeros(whitePawnBitboard & fileMask) / 8 + 1;
-                whitePassedPawnValue += rank * baseReward;
-            }
-
-            if ((blackPawnBitboard & fileMask) != 0 &&
-                    (whitePawnBitboard & (fileMask | fileMaskRight | fileMaskLeft)) == 0) {
-                int rank = 8 - Long.numberOfTrailingZeros(Long.highestOneBit(blackPawnBitboard & fileMask)) / 8;
-                blackPassedPawnValue += rank * baseReward;
-            }
+        long key = board.getZobristKey();
+        int value = evalCache.probe(key);
+        if (value == EvalCache.MISS){
+            value = evaluate(board);
+            evalCache.store(key, value);
         }
-        return (whitePassedPawnValue - blackPassedPawnValue);
+        return value;
     }
 
-    public int eval(Board board){
+    private int evaluate(Board board){
         //Get the game phases
         int midGame = gamePhase(board)[0];
         int endGame = gamePhase(board)[1];
         //Tampered eval
         int totalPiecesValue = (totalPiecesValue(board)[0] * midGame +
                 totalPiecesValue(board)[1] * endGame) / 32;
-        int passedPawnsScore =  (passedPawns(board) * endGame) / 32;
+        int pawnStructureScore = pawnTable.evaluate(board, midGame, endGame);
         int sideToMove = board.getSideToMove() == Side.WHITE ? 1 : -1;
-        return (totalPiecesValue + positionalValue(board)  + doubledPawns(board) + passedPawnsScore + checkMate(board)) * sideToMove;
+        return (totalPiecesValue + positionalValue(board) + pawnStructureScore + checkMate(board)) * sideToMove;
     }
 
     public static void main (String[] args){
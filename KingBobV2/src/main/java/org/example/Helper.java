@@ -12,7 +12,8 @@ import java.util.List;
 
 
 public class Helper {
-    Evaluation evaluation = new Evaluation();
+    // Only piece values are read, no eval cache or pawn table
+    Evaluation evaluation = new Evaluation(0, 0);
 
     public boolean isCapture(Board board, Move move){
         Square origin = move.getFrom();
@@ -57,12 +58,9 @@ public class Helper {
     // Calculating the value of each moves according to MVV-LVA but checking TT moves first + valuing promotions and checks
     private int calculateMoveValue(Board board, Move move, TranspositionTable transpositionTable){
         //Transposition value
-        if (transpositionTable.containsKey(board.getZobristKey())){
-            TranspositionTable.Entry node = transpositionTable.getEntry(board.getZobristKey());
-            Move TT_move = node.move;
-           if(move.equals(TT_move)){
-                return 1000 - node.depth;
-            }
+        long node = transpositionTable.probe(board.getZobristKey());
+        if (node != TranspositionTable.EMPTY && TranspositionTable.getPackedMove(node) == TranspositionTable.encodeMove(move)){
+            return 1000 - TranspositionTable.getDepth(node);
         }
         // Promotion Handling
         if (move.getPromotion() != null) {
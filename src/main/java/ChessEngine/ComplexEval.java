@@ -1,12 +1,25 @@
 package ChessEngine;
 import com.github.bhlangonijr.chesslib.*;
-import com.github.bhlangonijr.chesslib.move.Move;
-
-import java.util.ArrayList;
-import java.util.List;
 
 public class ComplexEval {
-    private static final int MATE_SCORE = 5000;
+    private static final int EVAL_CACHE_MB = 2;
+    private static final int PAWN_TABLE_MB = 1;
+    // Null when caching is turned off
+    private final EvalCache evalCache;
+    private final PawnTable pawnTable = new PawnTable(PAWN_TABLE_MB);
+
+    public ComplexEval(){
+        this(EVAL_CACHE_MB);
+    }
+
+    // A size of 0 turns the eval cache off, every call evaluates from scratch
+    public ComplexEval(int evalCacheMb){
+        evalCache = evalCacheMb > 0 ? new EvalCache(evalCacheMb) : null;
+    }
+
+    public EvalCache getEvalCache(){
+        return evalCache;
+    }
 
     public int flip(int index){
         return index ^ 56;
@@ -174,7 +187,22 @@ public class ComplexEval {
             -27, -11,   4,  13,  14,   4,  -5, -17,
             -53, -34, -21, -11, -28, -14, -24, -43};
 
+    // Cached by Zobrist key, a miss walks every piece on the board but never generates moves
+    // (no mate term, the search scores mate and stalemate when a node has no legal move)
     public int positionalEvaluation(Board board){
+        if (evalCache == null){
+            return evaluate(board);
+        }
+        long key = board.getZobristKey();
+        int value = evalCache.probe(key);
+        if (value == EvalCache.MISS){
+            value = evaluate(board);
+            evalCache.store(key, value);
+        }
+        return value;
+    }
+
+    private int evaluate(Board board){
         // Determine game phase
         int midGame = gamePhase(board)[0];
         int endGame = gamePhase(board)[1];
@@ -236,74 +264,55 @@ public class ComplexEval {
         boolean isEndGame = endGame > 10;
         int finalEval = (valueWhite - valueBlack) / 24;
         //Adding some other eval characteristics
-        finalEval += checkMate(board);
         finalEval += mobilityEval(board,isEndGame);
-        finalEval += passedPawns(board);
+        finalEval += pawnTable.evaluate(board, midGame, endGame);
         int sideToMove = board.getSideToMove() == Side.WHITE ? 1 : -1;
         return finalEval * sideToMove;
     }
 
-    private int checkMate(Board board) {
-        if (board.isMated()) {
-            // Assign mate score relative to the player to move
-            return -MATE_SCORE;
-        }
-        return 0; // No checkmate
-    }
-
-    private int passedPawns(Board board){
-        long blackPawnBitboard = board.getBitboard(Piece.BLACK_PAWN);
-        long whitePawnBitboard = board.getBitboard(Piece.WHITE_PAWN);
-        int baseReward = 10;
-        int whitePassedPawnValue = 0;
-        int blackPassedPawnValue = 0;
-
-        for (int file = 0; file < 8; file++) {
-            long fileMask = 0x0101010101010101L << file;
-            long fileMaskRight = file < 7 ? fileMask << 1 : 0;
-            long fileMaskLeft = file > 0 ? fileMask >> 1 : 0;
-
-            // Check for passed pawns
-            if ((whitePawnBitboard & fileMask) != 0 &&
-                    (blackPawnBitboard & (fileMask | fileMaskRight | fileMaskLeft)) == 0) {
-                int rank = Long.numberOfTrailingZeros(whitePawnBitboard & fileMask) / 8 + 1;
-                whitePassedPawnValue += rank * baseReward;
-            }
-
-            if ((blackPawnBitboard & fileMask) != 0 &&
-                    (whitePawnBitboard & (fileMask | fileMaskRight | fileMaskLeft)) == 0) {
-                int rank = 8 - Long.numberOfTrailingZeros(Long.highestOneBit(blackPawnBitboard & fileMask)) / 8;
-                blackPassedPawnValue += rank * baseReward;
-            }
-        }
-        return (whitePassedPawnValue - blackPassedPawnValue);
-    }
-
+    /*
+    Mobility from attack bitboards, both sides in one pass without generating moves.
+    Only safe squares count: not taken by an own piece and not attacked by an enemy pawn.
+     */
     private int mobilityEval(Board board, boolean isEndgame){
-        List<Move> moveList = board.legalMoves();
-        int whiteMobility = 0;
-        int blackMobility = 0;
-        for(Move move : moveList){
-            Piece piece = board.getPiece(move.getFrom());
+        long occupied = board.getBitboard();
+        long whitePawnAttacks = PawnTable.whitePawnAttacks(board.getBitboard(Piece.WHITE_PAWN));
+        long blackPawnAttacks = PawnTable.blackPawnAttacks(board.getBitboard(Piece.BLACK_PAWN));
+        long whiteSafe = ~board.getBitboard(Side.WHITE) & ~blackPawnAttacks;
+        long blackSafe = ~board.getBitboard(Side.BLACK) & ~whitePawnAttacks;
+        return mobility(board, Side.WHITE, occupied, whiteSafe, isEndgame)
+                - mobility(board, Side.BLACK, occupied, blackSafe, isEndgame);
+    }
 
-            int mobilityValue = switch (piece.getPieceType()){
+    private int mobility(Board board, Side side, long occupied, long safeSquares, boolean isEndgame){
+        int mobility = 0;
+        for (PieceType pieceType : MOBILITY_PIECES){
+            int mobilityValue = switch (pieceType){
                 case BISHOP -> isEndgame ? 6 : 5;
-                case QUEEN -> 3 ;
+                case QUEEN -> 3;
                 case ROOK -> isEndgame ? 4 : 3;
                 case KING -> isEndgame ? 0 : -10;
                 case null, default -> 0;
             };
-
-            if(piece.getPieceSide() == Side.WHITE){
-                whiteMobility += mobilityValue;
-            }
-            else{
-                blackMobility += mobilityValue;
+            if (mobilityValue == 0){continue;}
+            long pieceBitboard = board.getBitboard(Piece.make(side, pieceType));
+            while (pieceBitboard != 0){
+                Square square = Square.squareAt(Long.numberOfTrailingZeros(pieceBitboard));
+                long attacks = switch (pieceType){
+                    case BISHOP -> Bitboard.getBishopAttacks(occupied, square);
+                    case ROOK -> Bitboard.getRookAttacks(occupied, square);
+                    case QUEEN -> Bitboard.getQueenAttacks(occupied, square);
+                    case null, default -> Bitboard.getKingAttacks(square, safeSquares);
+                };
+                mobility += Long.bitCount(attacks & safeSquares) * mobilityValue;
+                pieceBitboard &= pieceBitboard - 1;
             }
         }
-        return whiteMobility - blackMobility;
+        return mobility;
     }
 
+    private static final PieceType[] MOBILITY_PIECES = {PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN, PieceType.KING};
+
     public static void main (String[] args){
         Board board = new Board();
         board.loadFromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
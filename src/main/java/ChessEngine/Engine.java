@@ -1,26 +1,37 @@
 package ChessEngine;
 import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
 import com.github.bhlangonijr.chesslib.move.Move;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /*
 Search:
 - Alpha beta pruning
 - Transposition table (move ordering + reuse positions)
-- Q search
+- Q search (delta pruning, depth guard, TT cutoffs)
 - Check search extension
 - MVV-LVA sorted moves
+- Static exchange evaluation (losing captures last, pruned in Q search)
 - 2 Killer moves
+- History, counter move and continuation history
 - Iterative deepening (time constraint + move ordering)
+- Soft/hard time limits (stop early on a stable best move, extend when it changes)
 - Null move pruning
 - Aspiration Window
 - Reverse Futility Pruning
 - PVS
+- Late move reductions
+- Lazy SMP (shared TT)
+- MultiPV (root moves of earlier lines are excluded)
 Evaluation:
 - Tampered eval (Game phase decided by number of pieces on the board)
+- Material, PST and game phase updated incrementally during the search
 - Total material (weighted by number of pieces)
 - Piece square table (weighted by number of pieces)
 - Reward passed pawns
@@ -31,14 +42,58 @@ public class Engine{
     // Classes for eval, move ordering, TT
     private final Helper boardHelper = new Helper();
     private final SimpleEval simpleEval = new SimpleEval();
-    // Approx 1GB TT
-    private final TranspositionTable TT = new TranspositionTable(1024);
+    // Material/PST/phase of the position being searched, follows every move the search makes and takes back
+    private final EvalAccumulator accumulator = new EvalAccumulator(simpleEval);
+    // Approx 1GB TT, shared by every search thread
+    private final TranspositionTable TT;
+    // Lazy SMP helpers, each with its own board copy and move ordering heuristics
+    private Engine[] helpers = new Engine[0];
+    // Late move reduction params (UCI options), shared with the helpers
+    private final LateMoveReductions LMR;
     private static final int MATE_SCORE = 1000000;
     // Search debug info
     int TOTAL_PRUNES;
     int TOTAL_NODES;
+    /*
+    Q search pruning counters, not comparable with each other:
+    DELTA_PRUNES counts captures skipped by per move delta pruning, DELTA_PRUNED_NODES and QSEARCH_GUARD_CUTOFFS count
+    nodes cut by whole node delta pruning and by the depth guard (their captures are never generated).
+     */
+    int DELTA_PRUNES;
+    int DELTA_PRUNED_NODES;
+    int QSEARCH_GUARD_CUTOFFS;
+    // UCI telemetry: nodes of the whole search (read by the main thread for the info lines) and the deepest ply reached
+    private long searchNodes;
+    private int selDepth;
+    // Receives one UCI info line per finished iteration, without one a debug line goes to stderr
+    private Consumer<String> infoListener;
+    // MultiPV: number of best lines searched per iteration, the root skips the moves of the lines already found
+    private static final int MAX_MULTI_PV = 64;
+    private int multiPV = 1;
+    private final Move[] excludedRootMoves = new Move[MAX_MULTI_PV];
+    private int excludedRootCount;
+    // go searchmoves: the root only searches these moves, empty for all of them
+    private List<Move> rootSearchMoves = List.of();
+    // Lines of the last finished iteration, best first
+    private List<MinimaxInfo> principalVariations = new ArrayList<>();
+    // Nodes (main and Q search) left until this thread checks the time and node limits again
+    private int nodesUntilTimeCheck;
     // Null move pruning reduction rate
     int R = 2;
+    // Triangular principal variation table, pvTable[ply] holds the best line from ply up to pvLength[ply]
+    private static final int MAX_PLY = 128;
+    private final Move[][] pvTable = new Move[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    // Delta pruning: a capture has to be able to win its victim plus this margin to raise alpha
+    private static final int DELTA_MARGIN = 200;
+    // Q search gives up after this many captures in a row and trusts the static eval
+    private static final int MAX_QSEARCH_DEPTH = 16;
+    // Depth Q search results are stored with, any main search entry is deeper
+    private static final int QSEARCH_TT_DEPTH = 0;
+    // One staged move picker per ply so picking moves never allocates
+    private final MovePicker[] movePickers = new MovePicker[MAX_PLY];
+    // Per ply search state (static eval, killers, current move, ...) shared between a node and its children
+    private final SearchStack[] stack = new SearchStack[MAX_PLY];
 
     public static class MinimaxInfo{
         public int state_value;
@@ -59,56 +114,208 @@ public class Engine{
         }
     }
 
+    public Engine() {
+        this(new TranspositionTable(1024), new LateMoveReductions());
+    }
+
+    private Engine(TranspositionTable TT, LateMoveReductions LMR) {
+        this.TT = TT;
+        this.LMR = LMR;
+        for (int i = 0; i < MAX_PLY; i++) {
+            movePickers[i] = new MovePicker(boardHelper);
+            stack[i] = new SearchStack();
+        }
+    }
+
+    // Number of search threads (UCI Threads option), the helpers share this engine's TT
+    public void setThreads(int threads) {
+        helpers = new Engine[Math.max(threads, 1) - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Engine(TT, LMR);
+        }
+    }
+
+    // UCI MultiPV option, only the main thread searches more than one line
+    public void setMultiPV(int multiPV) {
+        this.multiPV = Math.max(1, Math.min(multiPV, MAX_MULTI_PV));
+    }
+
+    public List<MinimaxInfo> getPrincipalVariations() {
+        return principalVariations;
+    }
+
+    public void setInfoListener(Consumer<String> infoListener) {
+        this.infoListener = infoListener;
+    }
+
+    public LateMoveReductions getLateMoveReductions() {
+        return LMR;
+    }
+
     public MinimaxInfo Think(Board board, long searchTime) {
-        int depth = 1;
-        MinimaxInfo bestChoice = null;
-        SearchManager timeManager = new SearchManager(searchTime);
+        return Think(board, SearchLimits.moveTime(searchTime));
+    }
 
-        if (TT.getCapacity() >= 100) {
-            TT.clear();
+    // Fixed depth/node searches for testing and analysis, see SearchLimits
+    public MinimaxInfo Think(Board board, SearchLimits limits) {
+        return Think(board, SearchManager.forLimits(limits));
+    }
+
+    // The caller keeps the manager to stop the search from another thread
+    public MinimaxInfo Think(Board board, SearchManager timeManager) {
+        // Age the TT instead of clearing it so the search starts warm from the previous move
+        TT.newSearch();
+
+        /*
+        Lazy SMP:
+        Every helper runs the same iterative deepening loop on its own copy of the board, the only thing shared is the TT.
+        Helpers fill the TT with results the main thread picks up, half of them start one ply deeper to spread the work out.
+         */
+        Thread[] helperThreads = new Thread[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            Engine helper = helpers[i];
+            Board helperBoard = board.clone();
+            int startDepth = 1 + (i + 1) % 2;
+            helperThreads[i] = new Thread(() -> helper.iterativeDeepening(helperBoard, timeManager, startDepth, false));
+            helperThreads[i].start();
         }
 
-        while (depth <= 64) {
+        MinimaxInfo bestChoice = iterativeDeepening(board, timeManager, 1, true);
+
+        // The main thread decides, stop the helpers once it is done
+        timeManager.stop();
+        for (Thread helperThread : helperThreads) {
+            try {
+                helperThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return bestChoice;
+    }
+
+    private MinimaxInfo iterativeDeepening(Board board, SearchManager timeManager, int depth, boolean mainThread) {
+        MinimaxInfo bestChoice = null;
+        boardHelper.ageHistory();
+        // Iterations in a row that ended with the same best move
+        int stableIterations = 0;
+        nodesUntilTimeCheck = timeManager.getCheckInterval();
+        searchNodes = 0;
+        long searchStart = System.nanoTime();
+        rootSearchMoves = timeManager.getSearchMoves();
+        accumulator.reset(board);
+
+        while (depth <= timeManager.getMaxDepth()) {
             TOTAL_NODES = 0;
+            DELTA_PRUNES = 0;
+            DELTA_PRUNED_NODES = 0;
+            QSEARCH_GUARD_CUTOFFS = 0;
+            simpleEval.getEvalCache().resetStats();
+            simpleEval.getPawnTable().resetStats();
+            selDepth = 0;
             Instant starts = Instant.now();
-            int aspirationWindow = 35;
-            MinimaxInfo currChoice;
+            MinimaxInfo currChoice = null;
+            List<MinimaxInfo> lines = new ArrayList<>();
 
-            while (true) {
-                int alpha = bestChoice != null ? bestChoice.state_value - aspirationWindow : -MATE_SCORE;
-                int beta = bestChoice != null ? bestChoice.state_value + aspirationWindow : MATE_SCORE;
+            /*
+            MultiPV:
+            Every line is a full root search that skips the root moves of the lines found before it in this iteration,
+            all of them share the TT so the later lines mostly reuse work. Only the best line has a score from the last
+            iteration to center an aspiration window on.
+             */
+            for (int pvIndex = 0; pvIndex < multiPV; pvIndex++) {
+                MinimaxInfo previous = pvIndex == 0 ? bestChoice : null;
+                int aspirationWindow = 35;
+                int score;
+                boolean insideWindow;
+
+                while (true) {
+                    int alpha = previous != null ? previous.state_value - aspirationWindow : -MATE_SCORE;
+                    int beta = previous != null ? previous.state_value + aspirationWindow : MATE_SCORE;
+
+                    score = Search(board, alpha, beta, depth, 0, timeManager, 0);
+
+                    // If score is inside the window (aka. alpha < score < beta) then we can proceed to next depth
+                    insideWindow = alpha < score && score < beta;
+                    if(insideWindow || previous == null || timeManager.checkTime()){
+                        break;
+                    }
+                    //Widen the window
+                    aspirationWindow *= 2;
 
-                currChoice = Search(board, alpha, beta, depth, 0, timeManager, 0);
+                }
 
-                // If score is inside the window (aka. alpha < score < beta) then we can proceed to next depth
-                int score = currChoice.state_value;
-                if(alpha < score && score < beta){
+                // The PV table is only turned into a MinimaxInfo once per line, an aborted or failed search has no move
+                Move rootMove = insideWindow && pvLength[0] > 0 ? pvTable[0][0] : null;
+                List<Move> mainLine = new ArrayList<>(Arrays.asList(pvTable[0]).subList(0, pvLength[0]));
+                MinimaxInfo line = new MinimaxInfo(score, rootMove, mainLine, depth);
+                if (pvIndex == 0) {
+                    currChoice = line;
+                }
+                // Out of time or out of root moves
+                if (rootMove == null) {
                     break;
                 }
-                //Widen the window
-                aspirationWindow *= 2;
-
+                lines.add(line);
+                excludedRootMoves[excludedRootCount++] = rootMove;
             }
+            excludedRootCount = 0;
 
             Instant end = Instant.now();
             long timeElapsed = Duration.between(starts, end).toMillis();
             long nps = (long)(TOTAL_NODES / Math.max(timeElapsed / 1000.0, 0.001));
 
-            System.out.printf("Depth: %-2d | Time: %-5d | NPS: %-7d | Eval: %6.2f | Result Depth: %-2d | Line: %s%n",
-                    depth,
-                    timeElapsed,
-                    nps,
-                    (float)currChoice.state_value/100,
-                    currChoice.depth,
-                    currChoice.main_line
-            );
+            if (mainThread && infoListener != null) {
+                // Only finished lines are reported, an aborted iteration may still have some
+                long elapsedMillis = (System.nanoTime() - searchStart) / 1_000_000;
+                for (int i = 0; i < lines.size(); i++) {
+                    infoListener.accept(uciInfo(lines.get(i), i + 1, elapsedMillis));
+                }
+            } else if (mainThread) {
+                System.err.printf("Depth: %-2d | Time: %-5d | NPS: %-7d | Eval: %6.2f | Result Depth: %-2d | QS delta pruned captures: %d | QS pruned nodes (delta/guard): %d/%d | Eval/pawn cache hits: %.1f%%/%.1f%% | Line: %s%n",
+                        depth,
+                        timeElapsed,
+                        nps,
+                        (float)currChoice.state_value/100,
+                        currChoice.depth,
+                        DELTA_PRUNES,
+                        DELTA_PRUNED_NODES,
+                        QSEARCH_GUARD_CUTOFFS,
+                        simpleEval.getEvalCache().getHitRate(),
+                        simpleEval.getPawnTable().getHitRate(),
+                        currChoice.main_line
+                );
+            }
 
+            double timeScale = 1.0;
             if (currChoice.move != null) {
+                /*
+                Time scaling:
+                A best move that survived several iterations is unlikely to change, so the soft limit shrinks.
+                A new best move or a dropping score means the position is not settled yet, so it grows.
+                 */
+                if (bestChoice != null && currChoice.move.equals(bestChoice.move)) {
+                    stableIterations++;
+                } else {
+                    stableIterations = 0;
+                }
+                if (stableIterations >= 6) {
+                    timeScale = 0.5;
+                } else if (stableIterations >= 3) {
+                    timeScale = 0.75;
+                } else if (stableIterations == 0 && bestChoice != null) {
+                    timeScale = 1.5;
+                }
+                if (bestChoice != null && bestChoice.state_value - currChoice.state_value > 50) {
+                    timeScale *= 1.5;
+                }
                 bestChoice = currChoice;
+                principalVariations = lines;
                 boardHelper.iterativeDeepeningMove(bestChoice.move);
             }
 
-            if (timeManager.shouldCancel()) {
+            // Helpers keep going until the main thread stops them
+            if (mainThread ? !timeManager.canStartIteration(timeScale, timeElapsed) : timeManager.checkTime()) {
                 break;
             }
 
@@ -117,143 +324,276 @@ public class Engine{
         return bestChoice;
     }
 
-    // Sorting by ID move > ttMove > promotions > MVV-LVA > Killer1 > Killer 2 > PST
-    private List<Move> moveGenerator(Board board, boolean isCapture, int ply){
-        if (isCapture){
-            return boardHelper.sortMoves(board, board.pseudoLegalCaptures(), TT, ply,true);
+
+    // info depth <d> seldepth <d> multipv <n> score cp <x> | mate <n> nodes <n> nps <n> hashfull <n> time <ms> pv <moves>
+    private String uciInfo(MinimaxInfo info, int pvNumber, long elapsedMillis) {
+        // Helper counters are read without synchronisation, being a few nodes behind does not matter here
+        long nodes = searchNodes;
+        for (Engine helper : helpers) {
+            nodes += helper.searchNodes;
+        }
+        StringBuilder line = new StringBuilder("info depth ").append(info.depth).append(" seldepth ").append(selDepth)
+                .append(" multipv ").append(pvNumber);
+        int score = info.state_value;
+        if (Math.abs(score) >= MATE_SCORE - MAX_PLY) {
+            // Mate scores count plies from the root, UCI wants moves (negative when we are getting mated)
+            int mateMoves = (MATE_SCORE - Math.abs(score) + 1) / 2;
+            line.append(" score mate ").append(score > 0 ? mateMoves : -mateMoves);
+        } else {
+            line.append(" score cp ").append(score);
         }
-        return boardHelper.sortMoves(board,board.pseudoLegalMoves(), TT, ply,false);
+        line.append(" nodes ").append(nodes)
+                .append(" nps ").append(nodes * 1000 / Math.max(elapsedMillis, 1))
+                .append(" hashfull ").append((int) (TT.getCapacity() * 1000))
+                .append(" time ").append(elapsedMillis)
+                .append(" pv");
+        for (Move move : info.main_line) {
+            line.append(' ').append(move);
+        }
+        return line.toString();
     }
 
-
     /*
         Quiescence Search: At cutoff depth go through every non-quiet moves from the cutoff node until
                            there is no more captures, in terms of checks we will handle this under check extensions.
+                           qDepth counts the captures played since the main search handed over.
      */
-    private int QSearch(Board board, int alpha, int beta, int ply) {
+    private int QSearch(Board board, int alpha, int beta, int ply, int qDepth) {
         TOTAL_NODES++;
+        searchNodes++;
+        nodesUntilTimeCheck--;
+        if (ply > selDepth) {
+            selDepth = ply;
+        }
 
-        if (board.isDraw()) {
+        // Same cheap draw checks as the main search (board.isDraw would generate every legal move for stalemate)
+        if (board.isRepetition(1) || board.isInsufficientMaterial() || board.getHalfMoveCounter() >= 100) {
             return 0;
         }
 
-        int stand_pat = simpleEval.positionalEvaluation(board);
+        // Every entry is deep enough for Q search, a bound that fits ends the node before the eval is computed
+        long entry = TT.probe(board.getZobristKey());
+        if (entry != TranspositionTable.EMPTY) {
+            int entryValue = TranspositionTable.getValue(entry);
+            FLAG entryFlag = TranspositionTable.getFlag(entry);
+            if (entryFlag == FLAG.EXACT
+                    || (entryFlag == FLAG.LOWER && entryValue >= beta)
+                    || (entryFlag == FLAG.UPPER && entryValue <= alpha)) {
+                return entryValue;
+            }
+        }
+
+        // Static eval has no mate term, a check that ends the main search is looked at here (only in check
+        // does the legal move generation run)
+        if (board.isKingAttacked() && board.legalMoves().isEmpty()) {
+            return -MATE_SCORE + ply;
+        }
+
+        int stand_pat = simpleEval.positionalEvaluation(board, accumulator);
+        stack[ply].staticEval = stand_pat;
         int bestValue = stand_pat;
 
         if (stand_pat >= beta) {
             TOTAL_PRUNES++;
+            TT.store(board.getZobristKey(), QSEARCH_TT_DEPTH, stand_pat, FLAG.LOWER, null);
+            return stand_pat;
+        }
+
+        // Depth guard: long capture chains and the end of the ply arrays stop at the static eval
+        if (qDepth >= MAX_QSEARCH_DEPTH || ply >= MAX_PLY - 1) {
+            QSEARCH_GUARD_CUTOFFS++;
+            return stand_pat;
+        }
+
+        /*
+        Delta pruning (whole node):
+        If even winning a queen can't bring us back to alpha no capture will, unless a pawn can promote on the way.
+         */
+        if (stand_pat + simpleEval.pieceWorthMg(PieceType.QUEEN) + DELTA_MARGIN < alpha && !boardHelper.hasPawnOnSeventh(board)) {
+            DELTA_PRUNED_NODES++;
             return stand_pat;
         }
 
+        int originalAlpha = alpha;
         if (alpha < stand_pat) {
             alpha = stand_pat;
         }
+        Move bestMove = null;
+
+        // The probe above also gives the capture ordering its hash move
+        MovePicker movePicker = movePickers[ply];
+        movePicker.initCaptures(board, TranspositionTable.getMove(entry));
 
-        for (Move move : moveGenerator(board, true, ply)) {
-            board.doMove(move);
-            int score = -QSearch(board, -beta, -alpha, ply + 1);
+        Move move;
+        while ((move = movePicker.next()) != null) {
+            // Delta pruning (per move): the victim plus a margin still leaves us below alpha
+            if (stand_pat + boardHelper.captureGain(board, move) + DELTA_MARGIN <= alpha) {
+                DELTA_PRUNES++;
+                continue;
+            }
+            accumulator.push(board, move);
+            if (!board.doMove(move)) {
+                accumulator.pop();
+                continue;
+            }
+            int score = -QSearch(board, -beta, -alpha, ply + 1, qDepth + 1);
             board.undoMove();
+            accumulator.pop();
 
             if (score >= beta) {
                 TOTAL_PRUNES++;
+                TT.store(board.getZobristKey(), QSEARCH_TT_DEPTH, score, FLAG.LOWER, move);
                 return score;
             }
 
             if (score > bestValue){
                 bestValue = score;
+                bestMove = move;
             }
             if (score > alpha) {
                 alpha = score;
             }
         }
+        // Exact when a capture (or standing pat) landed inside the window we were called with
+        FLAG flag = bestValue > originalAlpha ? FLAG.EXACT : FLAG.UPPER;
+        TT.store(board.getZobristKey(), QSEARCH_TT_DEPTH, bestValue, flag, bestMove);
         return bestValue;
     }
 
-    private MinimaxInfo Search(Board board, int alpha, int beta, int depth, int ply, SearchManager timeManager, int numExtension) {
+    private int Search(Board board, int alpha, int beta, int depth, int ply, SearchManager timeManager, int numExtension) {
         TOTAL_NODES++;
+        searchNodes++;
+        if (ply > selDepth) {
+            selDepth = ply;
+        }
+        // Empty PV until a move raises the best value at this ply
+        pvLength[ply] = ply;
 
         if (depth <= 0) {
-            int score = QSearch(board, alpha, beta, ply);
-            return new MinimaxInfo(score, null);
+            return QSearch(board, alpha, beta, ply, 0);
         }
 
-        // Time management check
+        // Time management check, the clock and node limit are only looked at every check interval
+        if (--nodesUntilTimeCheck <= 0) {
+            int interval = timeManager.getCheckInterval();
+            timeManager.poll(interval - nodesUntilTimeCheck);
+            nodesUntilTimeCheck = interval;
+        }
         if (timeManager.shouldCancel()) {
-            return new MinimaxInfo(0, null);
+            return 0;
         }
 
-        // Draw detection
-        if (board.isDraw() || board.isStaleMate() || board.isRepetition(1)) {
-            return new MinimaxInfo(0, null);
-        }
-        // Checkmate detection
-        if (board.isMated()) {
-            return new MinimaxInfo(-MATE_SCORE + ply, null);
+        // Draw detection, stalemate and checkmate are found after the move loop when no move was legal
+        // (board.isDraw/isMated would run full legal move generation at every node)
+        if (board.isRepetition(1) || board.isInsufficientMaterial() || board.getHalfMoveCounter() >= 100) {
+            return 0;
         }
 
+        SearchStack ss = stack[ply];
+
         // Transposition table lookup
-        TranspositionTable.Entry entry = TT.getEntry(board.getZobristKey());
-        if (entry != null && entry.depth >= depth && ply > 0) {
-            int entryValue = entry.value;
-            Move entryMove = entry.move;
-            List<Move> entryLine = entry.mainLine;
-            int entryDepth = entry.depth;
+        long entry = TT.probe(board.getZobristKey());
+        if (entry != TranspositionTable.EMPTY && TranspositionTable.getDepth(entry) >= depth && ply > 0) {
+            int entryValue = TranspositionTable.getValue(entry);
+            FLAG entryFlag = TranspositionTable.getFlag(entry);
             // Adjust the bestValue based on the flag
-            if (entry.flag == FLAG.EXACT) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
-            } else if (entry.flag == FLAG.LOWER && entryValue > beta) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
-            } else if (entry.flag == FLAG.UPPER && entryValue <= alpha) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
+            if (entryFlag == FLAG.EXACT) {
+                return entryValue;
+            } else if (entryFlag == FLAG.LOWER && entryValue > beta) {
+                return entryValue;
+            } else if (entryFlag == FLAG.UPPER && entryValue <= alpha) {
+                return entryValue;
             }
         }
 
         //Pruning params
         boolean isKingAttacked = board.isKingAttacked();
 
+        /*
+        Static eval, computed once per node and kept on the stack (there is none when in check, nothing uses it then).
+        Improving: better than the last time this side was to move, two plies up (or four if that node was in check).
+         */
+        ss.staticEval = isKingAttacked ? SearchStack.NO_EVAL : simpleEval.positionalEvaluation(board, accumulator);
+        if (isKingAttacked) {
+            ss.improving = false;
+        } else if (ply >= 2 && stack[ply - 2].staticEval != SearchStack.NO_EVAL) {
+            ss.improving = ss.staticEval > stack[ply - 2].staticEval;
+        } else if (ply >= 4 && stack[ply - 4].staticEval != SearchStack.NO_EVAL) {
+            ss.improving = ss.staticEval > stack[ply - 4].staticEval;
+        } else {
+            ss.improving = true;
+        }
+
         //Reverse Futility Pruning
-        int futilityMargin = 150 * depth;
+        // An improving position is more likely to hold its score, so it gets one ply less of margin
+        int futilityMargin = 150 * (depth - (ss.improving ? 1 : 0));
         //If your score is so good you can take a big hit and still get the beta cutoff (exclusive), no need to search deeper
         //Only apply when we are at a relatively lower depths, at deeper depths there are more tactical nuances
-        if (depth < 6 && simpleEval.positionalEvaluation(board) - futilityMargin > beta
-                && !isKingAttacked && numExtension == 0){
-            return new MinimaxInfo(simpleEval.positionalEvaluation(board),null);
+        if (depth < 6 && !isKingAttacked && ss.staticEval - futilityMargin > beta
+                && numExtension == 0){
+            return ss.staticEval;
         }
 
         //Null move pruning
         // If you skip a turn and still manage to obtain a beta cutoff then we don't need to search further
-        if (depth > 2  && beta <= simpleEval.positionalEvaluation(board)
-                && !isKingAttacked && boardHelper.nullMovePruning(board)
+        // Never two null moves in a row, the parent's current move is null when it just passed
+        if (depth > 2 && !isKingAttacked && beta <= ss.staticEval
+                && boardHelper.nullMovePruning(board)
+                && (ply == 0 || stack[ply - 1].currentMove != null)
                 && numExtension == 0){
+            ss.currentMove = null;
+            ss.continuationIndex = -1;
+            accumulator.pushNull();
             board.doNullMove();
-            MinimaxInfo childInfo = Search(board, -beta, beta + 1, depth - R, ply + 1, timeManager, numExtension);
-            int score = -childInfo.state_value;
-            Move move = childInfo.move;
+            int score = -Search(board, -beta, beta + 1, depth - R, ply + 1, timeManager, numExtension);
             board.undoMove();
-            // Beta cutoff, return the score immediately
+            accumulator.pop();
+            // Beta cutoff, return the score immediately (no move of our own, the TT keeps whatever move it had)
             if (score >= beta){
-                TT.store(board.getZobristKey(), depth, score, FLAG.LOWER, move, null);
-                return new MinimaxInfo(score,null);
+                TT.store(board.getZobristKey(), depth, score, FLAG.LOWER, null);
+                pvLength[ply] = ply;
+                return score;
             }
         }
 
         // PVS search params
         int moveCounter = 0;
+        ss.quietCount = 0;
+        int previousIndex = ply > 0 ? stack[ply - 1].continuationIndex : -1;
+        boolean isPvNode = beta - alpha > 1;
         int bestValue = -Integer.MAX_VALUE;
         Move bestMove = null;
 
-        //Calculated line
-        List<Move> bestLine = new ArrayList<>();
+        // Hash move from the probe above, at the root the move from the previous iteration comes first
+        Move hashMove = ply == 0 && boardHelper.getIterativeDeepeningMove() != null
+                ? boardHelper.getIterativeDeepeningMove() : TranspositionTable.getMove(entry);
+        MovePicker movePicker = movePickers[ply];
+        movePicker.init(board, hashMove, ss.killers, previousIndex);
 
         // Main search loop
-        for (Move move : moveGenerator(board, false, ply)) {
-            board.doMove(move);
+        Move move;
+        while ((move = movePicker.next()) != null) {
+            // MultiPV: moves of the better lines are already reported, searchmoves: only the given moves are searched
+            if (ply == 0 && isExcludedRootMove(move)) {
+                continue;
+            }
+            // Only quiet moves get reduced
+            boolean isQuiet = !boardHelper.isCapture(board, move) && move.getPromotion() == Piece.NONE;
+            boolean isKiller = ss.isKiller(move);
+            int history = isQuiet ? boardHelper.quietHistory(board, move, previousIndex) : 0;
+            ss.currentMove = move;
+            ss.continuationIndex = Helper.pieceSquareIndex(board.getPiece(move.getFrom()), move.getTo());
+            // The picker hands out pseudo-legal moves, doMove refuses the ones leaving our king in check
+            accumulator.push(board, move);
+            if (!board.doMove(move)) {
+                accumulator.pop();
+                continue;
+            }
             /*
              Move extension:
              If our king is under attack extend the search by +1 depth but we shouldn't extend pass 16 ply because of time
              */
             int extension = numExtension < 16 && isKingAttacked ? 1 : 0;
-            MinimaxInfo childInfo;
             int score;
             moveCounter++;
             /*
@@ -263,33 +603,45 @@ public class Engine{
             but if we do find a better move (a move that raises the current alpha value) then we must research it at full window.
              */
             if(moveCounter <= 1 || numExtension > 0){
-                childInfo = Search(board, -beta, -alpha, depth - 1 + extension, ply + 1, timeManager, numExtension + extension);
-                score = -childInfo.state_value;
+                score = -Search(board, -beta, -alpha, depth - 1 + extension, ply + 1, timeManager, numExtension + extension);
             }
             //Else do a narrow search
             else{
-                childInfo = Search(board, - alpha - 1, -alpha, depth - 1 + extension, ply + 1, timeManager, numExtension + extension);
-                score = -childInfo.state_value;
+                /*
+                Late move reductions:
+                Quiet moves late in the ordering are searched shallower, unless we are in check or the move gives check.
+                If the reduced search still beats alpha the move gets searched again at full depth.
+                 */
+                int reduction = 0;
+                if (isQuiet && !isKingAttacked && !board.isKingAttacked()) {
+                    reduction = LMR.reduction(depth, moveCounter, isPvNode, isKiller, history);
+                }
+                score = -Search(board, - alpha - 1, -alpha, depth - 1 + extension - reduction, ply + 1, timeManager, numExtension + extension);
+                if (reduction > 0 && score > alpha) {
+                    score = -Search(board, - alpha - 1, -alpha, depth - 1 + extension, ply + 1, timeManager, numExtension + extension);
+                }
                 //If it turns out we found a better move then do a full search
                 if (score > alpha && score < beta){
-                    childInfo = Search(board, -beta, -alpha, depth - 1 + extension, ply + 1, timeManager, numExtension + extension);
-                    score = -childInfo.state_value;
+                    score = -Search(board, -beta, -alpha, depth - 1 + extension, ply + 1, timeManager, numExtension + extension);
                 }
             }
             board.undoMove();
+            accumulator.pop();
 
-            // If time is up return the best move found so far.
+            // If time is up return, the root sees an empty PV and throws the iteration away
             if (timeManager.shouldCancel()) {
-                return new MinimaxInfo(0,null);
+                pvLength[ply] = ply;
+                return 0;
             }
 
             if (score > bestValue) {
                 bestValue = score;
                 bestMove = move;
 
-                bestLine.clear();
-                bestLine.add(move);
-                bestLine.addAll(childInfo.main_line);
+                // Triangular PV: this move followed by the child's line
+                pvTable[ply][ply] = move;
+                System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                pvLength[ply] = pvLength[ply + 1];
                 // We found a new highest valued move in the position. Record it for future pruning
                 if (score > alpha) {
                     alpha = score;
@@ -299,16 +651,33 @@ public class Engine{
             if (score >= beta) {
                 TOTAL_PRUNES++;
                 // Killer Move is a quiet move which caused a beta-cutoff
-                if (bestMove != null && !boardHelper.isCapture(board, bestMove)){
+                if (isQuiet){
                     /*
                     Storing killer moves based on ply, replacing killer moves by latest beta cutoff
                      */
-                    boardHelper.killerMoves[1][ply] = boardHelper.killerMoves[0][ply];
-                    boardHelper.killerMoves[0][ply] = bestMove;
+                    ss.storeKiller(move);
+                    /*
+                    History: the cutoff move gets a depth based bonus, every quiet move searched before it was a waste
+                    of time and gets the same amount taken off. The move also becomes the counter move to the previous move.
+                     */
+                    int bonus = Math.min(16 * depth * depth, 1200);
+                    boardHelper.updateQuietHistory(board, move, previousIndex, bonus);
+                    for (int i = 0; i < ss.quietCount; i++) {
+                        boardHelper.updateQuietHistory(board, ss.quietsSearched[i], previousIndex, -bonus);
+                    }
+                    boardHelper.updateCounterMove(previousIndex, move);
                 }
                 break;
             }
+            if (isQuiet && ss.quietCount < ss.quietsSearched.length) {
+                ss.quietsSearched[ss.quietCount++] = move;
+            }
+        }
+        // No legal moves: checkmate or stalemate
+        if (moveCounter == 0) {
+            return isKingAttacked ? -MATE_SCORE + ply : 0;
         }
+
         // Store position in transposition table
         FLAG flag;
         if (bestValue >= beta) {
@@ -318,8 +687,23 @@ public class Engine{
         } else {
             flag = FLAG.UPPER;
         }
-        TT.store(board.getZobristKey(),  depth, bestValue, flag, bestMove, bestLine);
-        return new MinimaxInfo(bestValue, bestMove, bestLine, depth);
+        // A root searched without some of its moves does not have its real value
+        if (ply > 0 || (excludedRootCount == 0 && rootSearchMoves.isEmpty())) {
+            TT.store(board.getZobristKey(),  depth, bestValue, flag, bestMove);
+        }
+        return bestValue;
+    }
+
+    private boolean isExcludedRootMove(Move move) {
+        if (!rootSearchMoves.isEmpty() && !rootSearchMoves.contains(move)) {
+            return true;
+        }
+        for (int i = 0; i < excludedRootCount; i++) {
+            if (excludedRootMoves[i].equals(move)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static void main(String[] args){
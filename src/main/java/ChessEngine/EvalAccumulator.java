@@ -0,0 +1,115 @@
+package ChessEngine;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/*
+Incremental material + PST + game phase:
+The midgame and endgame sums (white minus black) and the raw game phase are kept for every ply of the search.
+push is called with the move before board.doMove and only adds what the move changes (moved piece, captured piece,
+promotion, castling rook), pop goes back to the previous ply, so the search never recomputes them from scratch.
+ */
+public class EvalAccumulator {
+    private static final int MAX_PLY = 256;
+
+    private final SimpleEval simpleEval;
+    private final int[] mg = new int[MAX_PLY];
+    private final int[] eg = new int[MAX_PLY];
+    private final int[] phase = new int[MAX_PLY];
+    private int top;
+
+    public EvalAccumulator(SimpleEval simpleEval) {
+        this.simpleEval = simpleEval;
+    }
+
+    // Full computation for the root position
+    public void reset(Board board) {
+        top = 0;
+        mg[0] = 0;
+        eg[0] = 0;
+        phase[0] = 0;
+        for (Piece piece : Piece.allPieces) {
+            long pieceBitboard = board.getBitboard(piece);
+            while (pieceBitboard != 0) {
+                int square = Long.numberOfTrailingZeros(pieceBitboard);
+                mg[0] += simpleEval.mgValue(piece, square);
+                eg[0] += simpleEval.egValue(piece, square);
+                phase[0] += simpleEval.phaseValue(piece.getPieceType());
+                pieceBitboard &= pieceBitboard - 1;
+            }
+        }
+    }
+
+    // Called with the board still in the position the move is played from
+    public void push(Board board, Move move) {
+        mg[top + 1] = mg[top];
+        eg[top + 1] = eg[top];
+        phase[top + 1] = phase[top];
+        top++;
+
+        int from = move.getFrom().ordinal();
+        int to = move.getTo().ordinal();
+        Piece piece = board.getPiece(move.getFrom());
+        Piece captured = board.getPiece(move.getTo());
+
+        // Captured piece, en passant takes the pawn behind the destination square
+        if (captured != Piece.NONE) {
+            remove(captured, to);
+        } else if (piece.getPieceType() == PieceType.PAWN && move.getFrom().getFile() != move.getTo().getFile()) {
+            Side side = piece.getPieceSide();
+            remove(Piece.make(side.flip(), PieceType.PAWN), side == Side.WHITE ? to - 8 : to + 8);
+        }
+
+        remove(piece, from);
+        add(move.getPromotion() != Piece.NONE ? move.getPromotion() : piece, to);
+
+        // Castling: the king moves two files, the rook jumps over it
+        if (piece.getPieceType() == PieceType.KING && Math.abs(from - to) == 2) {
+            Piece rook = Piece.make(piece.getPieceSide(), PieceType.ROOK);
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            remove(rook, rookFrom);
+            add(rook, rookTo);
+        }
+    }
+
+    // Null move, nothing changes
+    public void pushNull() {
+        mg[top + 1] = mg[top];
+        eg[top + 1] = eg[top];
+        phase[top + 1] = phase[top];
+        top++;
+    }
+
+    public void pop() {
+        top--;
+    }
+
+    private void add(Piece piece, int square) {
+        mg[top] += simpleEval.mgValue(piece, square);
+        eg[top] += simpleEval.egValue(piece, square);
+        phase[top] += simpleEval.phaseValue(piece.getPieceType());
+    }
+
+    private void remove(Piece piece, int square) {
+        mg[top] -= simpleEval.mgValue(piece, square);
+        eg[top] -= simpleEval.egValue(piece, square);
+        phase[top] -= simpleEval.phaseValue(piece.getPieceType());
+    }
+
+    public int getMg() {
+        return mg[top];
+    }
+
+    public int getEg() {
+        return eg[top];
+    }
+
+    // Raw phase, not capped at 24 yet
+    public int getPhase() {
+        return phase[top];
+    }
+}
@@ -0,0 +1,55 @@
+package ChessEngine;
+
+/*
+Eval cache:
+Static evals of recently evaluated positions, indexed by Zobrist key. The same position is evaluated again and again
+in one search (transpositions, re-searches, RFP/NMP and stand pat of the same node), a hit skips the whole eval.
+One entry per index and a new position always overwrites it, the full key is kept so a hit is always the right position.
+ */
+public class EvalCache {
+    // Returned by probe when the position is not cached, no eval can be this low
+    public static final int MISS = Integer.MIN_VALUE;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    // Hit rate counters
+    private long probes;
+    private long hits;
+
+    public EvalCache(int mbSize) {
+        // Each entry is 12 bytes (key + value), round down to a power of 2 for the index mask
+        long entries = ((long) mbSize * 1024 * 1024) / 12;
+        int size = Integer.highestOneBit((int) Math.max(1, Math.min(entries, 1 << 26)));
+        keys = new long[size];
+        values = new int[size];
+        mask = size - 1;
+    }
+
+    public int probe(long key) {
+        probes++;
+        int index = (int) key & mask;
+        // Key 0 is an empty entry
+        if (key != 0 && keys[index] == key) {
+            hits++;
+            return values[index];
+        }
+        return MISS;
+    }
+
+    public void store(long key, int value) {
+        int index = (int) key & mask;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    // Percentage of probes that were hits since the last resetStats
+    public double getHitRate() {
+        return probes == 0 ? 0 : 100.0 * hits / probes;
+    }
+
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+    }
+}
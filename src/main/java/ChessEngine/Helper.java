@@ -3,21 +3,88 @@ package ChessEngine;
 import com.github.bhlangonijr.chesslib.*;
 import com.github.bhlangonijr.chesslib.move.Move;
 
-import java.util.ArrayList;
-import java.util.List;
-
 
 
 public class Helper {
-    SimpleEval simpleEval = new SimpleEval();
+    // Only piece values and tables are read, no eval cache or pawn table
+    SimpleEval simpleEval = new SimpleEval(0, 0);
     private Move idMove;
     public Move [][] killerMoves = new Move[2][100];
+    // Quiet move history, bounded to [-MAX_HISTORY, MAX_HISTORY] by the gravity update
+    private static final int MAX_HISTORY = 16384;
+    // Butterfly history: side to move, from square, to square
+    private final int[][][] history = new int[2][64][64];
+    // Continuation history: previous move (piece, destination) followed by this move (piece, destination)
+    private final int[][] continuationHistory = new int[12 * 64][12 * 64];
+    // Counter move: the quiet move that last refuted a given previous move (piece, destination)
+    private final Move[] counterMoves = new Move[12 * 64];
 
     //fetching iterative deepening move
     public void iterativeDeepeningMove(Move move){
         this.idMove = move;
     }
 
+    public Move getIterativeDeepeningMove(){
+        return idMove;
+    }
+
+    // Index used by the continuation history and counter moves for a piece landing on a square
+    public static int pieceSquareIndex(Piece piece, Square square){
+        return piece.ordinal() * 64 + square.ordinal();
+    }
+
+    // Butterfly + continuation history of a quiet move, previousIndex is -1 at the root and after a null move
+    public int quietHistory(Board board, Move move, int previousIndex){
+        int score = history[board.getSideToMove().ordinal()][move.getFrom().ordinal()][move.getTo().ordinal()];
+        if (previousIndex >= 0){
+            score += continuationHistory[previousIndex][pieceSquareIndex(board.getPiece(move.getFrom()), move.getTo())];
+        }
+        return score;
+    }
+
+    public Move getCounterMove(int previousIndex){
+        return previousIndex >= 0 ? counterMoves[previousIndex] : null;
+    }
+
+    // Reward (bonus > 0) or punish (bonus < 0) a quiet move, called with the board at the node the move was played from
+    public void updateQuietHistory(Board board, Move move, int previousIndex, int bonus){
+        int side = board.getSideToMove().ordinal();
+        int from = move.getFrom().ordinal();
+        int to = move.getTo().ordinal();
+        history[side][from][to] = gravity(history[side][from][to], bonus);
+        if (previousIndex >= 0){
+            int index = pieceSquareIndex(board.getPiece(move.getFrom()), move.getTo());
+            continuationHistory[previousIndex][index] = gravity(continuationHistory[previousIndex][index], bonus);
+        }
+    }
+
+    public void updateCounterMove(int previousIndex, Move move){
+        if (previousIndex >= 0){
+            counterMoves[previousIndex] = move;
+        }
+    }
+
+    // The closer an entry is to the limit the less a bonus moves it, so no entry can run away
+    private int gravity(int entry, int bonus){
+        return entry + bonus - entry * Math.abs(bonus) / MAX_HISTORY;
+    }
+
+    // Called before every search, old results still count but the new search quickly takes over
+    public void ageHistory(){
+        for (int[][] sideHistory : history){
+            for (int[] fromHistory : sideHistory){
+                for (int i = 0; i < fromHistory.length; i++){
+                    fromHistory[i] /= 2;
+                }
+            }
+        }
+        for (int[] previousHistory : continuationHistory){
+            for (int i = 0; i < previousHistory.length; i++){
+                previousHistory[i] /= 2;
+            }
+        }
+    }
+
     //Null move pruning
     public boolean nullMovePruning(Board board){
         // King's bitboard
@@ -38,97 +105,68 @@ public class Helper {
         Piece destinationPiece = board.getPiece(destination);
         // get piece at origin
         Piece originPiece = board.getPiece(origin);
-        // If there is nothing at that destination square
-        return originPiece != Piece.NONE && destinationPiece != Piece.NONE && destinationPiece.getPieceSide() != originPiece.getPieceSide();
+        if (originPiece == Piece.NONE){return false;}
+        // En passant: a pawn changing file onto an empty square
+        if (destinationPiece == Piece.NONE){
+            return originPiece.getPieceType() == PieceType.PAWN && origin.getFile() != destination.getFile();
+        }
+        return destinationPiece.getPieceSide() != originPiece.getPieceSide();
     }
 
-    // Sorting by MVV-LVA, TT moves, checks, promotions and previous move from ID
-    public List<Move> sortMoves(Board board, List<Move> legalMoves, TranspositionTable transpositionTable, int ply, boolean qSearch){
-        List<MoveInfo> moveScores = new ArrayList<>();
-        List<Move> sortedMoves = new ArrayList<>();
-
-        for (Move move : legalMoves){
-            if(!board.doMove(move)){continue;}
-            board.undoMove();
-            MoveInfo moveInfo;
-            if(qSearch){
-                moveInfo = new MoveInfo(move, calculateCaptureMoveValue(board, move, transpositionTable));
-            }
-            else {
-                moveInfo = new MoveInfo(move, calculateMoveValue(board, move, transpositionTable, ply));
-            }
-            moveScores.add(moveInfo);
-        }
+    // Cheap check that a move from the TT or the killer table can be played in this position (ignoring pins and checks)
+    public boolean isPseudoLegal(Board board, Move move){
+        Side side = board.getSideToMove();
+        Square origin = move.getFrom();
+        Square destination = move.getTo();
+        Piece originPiece = board.getPiece(origin);
+        Piece destinationPiece = board.getPiece(destination);
+        // Has to move one of our pieces and can't land on one of them
+        if (originPiece == Piece.NONE || originPiece.getPieceSide() != side){return false;}
+        if (destinationPiece != Piece.NONE && destinationPiece.getPieceSide() == side){return false;}
 
-        // sort by biggest to smallest
-        moveScores.sort((a,b) -> b.value - a.value);
-        for (MoveInfo move_info : moveScores) {
-            sortedMoves.add(move_info.move);
-        }
-        return sortedMoves;
+        boolean isPromotion = move.getPromotion() != Piece.NONE;
+        long destinationBitboard = destination.getBitboard();
+        long occupied = board.getBitboard();
+        return switch (originPiece.getPieceType()) {
+            case KNIGHT -> !isPromotion && (Bitboard.getKnightAttacks(origin, ~0L) & destinationBitboard) != 0;
+            case BISHOP -> !isPromotion && (Bitboard.getBishopAttacks(occupied, origin) & destinationBitboard) != 0;
+            case ROOK -> !isPromotion && (Bitboard.getRookAttacks(occupied, origin) & destinationBitboard) != 0;
+            case QUEEN -> !isPromotion && (Bitboard.getQueenAttacks(occupied, origin) & destinationBitboard) != 0;
+            // Castling is rare enough to just look it up in the generated moves
+            case KING -> !isPromotion && ((Bitboard.getKingAttacks(origin, ~0L) & destinationBitboard) != 0
+                    || board.pseudoLegalMoves().contains(move));
+            case PAWN -> isPseudoLegalPawnMove(board, move, side, destinationPiece, isPromotion);
+            case null, default -> false;
+        };
     }
 
-    // Calculating the value of each moves according to MVV-LVA but checking TT moves first + valuing promotions and checks
-    //Ordering scheme as such ID Move > TT move > MVV-LVA > Promotion > Killer 1 > Killer 2 > PST
-    private int calculateMoveValue(Board board, Move move, TranspositionTable transpositionTable, int ply){
-        //ID value should always be looked at first but only at root node
+    private boolean isPseudoLegalPawnMove(Board board, Move move, Side side, Piece destinationPiece, boolean isPromotion){
+        int originIndex = move.getFrom().ordinal();
+        int destinationIndex = move.getTo().ordinal();
+        // Promote exactly when reaching the last rank and only to one of our own pieces
+        boolean lastRank = side == Side.WHITE ? destinationIndex >= 56 : destinationIndex < 8;
+        if (isPromotion != lastRank){return false;}
+        if (isPromotion && move.getPromotion().getPieceSide() != side){return false;}
 
-        if (ply == 0 && move.equals(idMove)) {
-            return 60000;
+        int forward = side == Side.WHITE ? 8 : -8;
+        // Single push
+        if (destinationIndex - originIndex == forward){
+            return destinationPiece == Piece.NONE;
         }
-
-        //Transposition value
-        if (transpositionTable.containsKey(board.getZobristKey())){
-            TranspositionTable.Entry node = transpositionTable.getEntry(board.getZobristKey());
-            Move TT_move = node.move;
-            if(move.equals(TT_move)){
-                return 50000 + node.depth;
-            }
-        }
-        // Promotion Handling
-        if (move.getPromotion() == Piece.WHITE_QUEEN || move.getPromotion() == Piece.BLACK_QUEEN) {
-            return 35000;
+        // Double push from the starting rank over an empty square
+        if (destinationIndex - originIndex == 2 * forward){
+            boolean startRank = side == Side.WHITE ? originIndex < 16 : originIndex >= 48;
+            return startRank && destinationPiece == Piece.NONE
+                    && board.getPiece(Square.squareAt(originIndex + forward)) == Piece.NONE;
         }
-        //Capture move ordering
-        if(isCapture(board,move)){
-            return 30000 + MVV_LVA(board,move);
+        // Captures, including en passant
+        if ((Bitboard.getPawnAttacks(side, move.getFrom()) & move.getTo().getBitboard()) != 0){
+            return destinationPiece != Piece.NONE || move.getTo() == board.getEnPassant();
         }
-        //Quiet move ordering
-        else {
-            int quietScore = 0;
-            //Killer moves
-            if (killerMoves[0][ply] != null && move.equals(killerMoves[0][ply])) {
-                quietScore = 9000;
-            }
-
-            if (killerMoves[1][ply] != null && move.equals(killerMoves[1][ply])) {
-                quietScore = 7000;
-            }
-            quietScore += PST(board, move);
-            return quietScore;
-        }
-    }
-
-    //Move ordering move Q-search
-    private int calculateCaptureMoveValue(Board board, Move move,TranspositionTable transpositionTable){
-        // TT values are good
-        int score = 0;
-        if (transpositionTable.containsKey(board.getZobristKey())){
-            TranspositionTable.Entry node = transpositionTable.getEntry(board.getZobristKey());
-            Move TT_move = node.move;
-            if(move.equals(TT_move)){
-                score +=  4000 - node.depth;
-            }
-        }
-
-        if (move.getPromotion() == Piece.WHITE_QUEEN || move.getPromotion() == Piece.BLACK_QUEEN) {
-            score += 2000; // Promotions are highly prioritized
-        }
-        score += 3000 + MVV_LVA(board, move);
-        return score;
+        return false;
     }
 
-    private int MVV_LVA(Board board, Move move){
+    int MVV_LVA(Board board, Move move){
         // Origin square and destination square
         Square origin = move.getFrom();
         Square destination = move.getTo();
@@ -144,7 +182,114 @@ public class Helper {
         return destination_piece_value - origin_piece_value;
     }
 
-    private int PST(Board board, Move move){
+    // Most material a capture can win right away: the victim plus what a promotion adds
+    public int captureGain(Board board, Move move){
+        Piece destinationPiece = board.getPiece(move.getTo());
+        // Only en passant captures land on an empty square
+        int gain = simpleEval.pieceWorthMg(destinationPiece == Piece.NONE ? PieceType.PAWN : destinationPiece.getPieceType());
+        if (move.getPromotion() != Piece.NONE){
+            gain += simpleEval.pieceWorthMg(move.getPromotion().getPieceType()) - simpleEval.pieceWorthMg(PieceType.PAWN);
+        }
+        return gain;
+    }
+
+    // Side to move has a pawn one step away from promoting
+    public boolean hasPawnOnSeventh(Board board){
+        Side side = board.getSideToMove();
+        long seventhRank = side == Side.WHITE ? 0x00FF000000000000L : 0x000000000000FF00L;
+        return (board.getBitboard(Piece.make(side, PieceType.PAWN)) & seventhRank) != 0;
+    }
+
+    /*
+    Static exchange evaluation:
+    Material balance of the capture sequence on the destination square when both sides always recapture with their
+    least valuable attacker and may stop whenever continuing would lose material.
+    Attackers are found from bitboards with the pieces that already captured removed from the occupancy,
+    so sliders lined up behind them (x-rays) join the exchange.
+     */
+    public int SEE(Board board, Move move){
+        Square origin = move.getFrom();
+        Square destination = move.getTo();
+        Piece originPiece = board.getPiece(origin);
+        Piece destinationPiece = board.getPiece(destination);
+        long occupied = board.getBitboard() ^ origin.getBitboard();
+
+        int[] gain = seeGain;
+        // En passant: the captured pawn is not on the destination square
+        if (destinationPiece == Piece.NONE && originPiece.getPieceType() == PieceType.PAWN
+                && origin.getFile() != destination.getFile()){
+            gain[0] = seeValue(PieceType.PAWN);
+            occupied ^= Square.squareAt(destination.ordinal() + (originPiece.getPieceSide() == Side.WHITE ? -8 : 8)).getBitboard();
+        } else {
+            gain[0] = seeValue(destinationPiece.getPieceType());
+        }
+        // Value of the piece standing on the destination square, the one the next capture takes
+        int pieceOnSquare = seeValue(originPiece.getPieceType());
+        if (move.getPromotion() != Piece.NONE){
+            gain[0] += seeValue(move.getPromotion().getPieceType()) - seeValue(PieceType.PAWN);
+            pieceOnSquare = seeValue(move.getPromotion().getPieceType());
+        }
+
+        Side side = originPiece.getPieceSide().flip();
+        int d = 0;
+        while (d < gain.length - 1){
+            long attackers = attackersTo(board, destination, occupied) & occupied & board.getBitboard(side);
+            if (attackers == 0){break;}
+            // Least valuable attacker goes first
+            PieceType attackerType = null;
+            long attacker = 0;
+            for (PieceType pieceType : SEE_ORDER){
+                attacker = attackers & board.getBitboard(Piece.make(side, pieceType));
+                if (attacker != 0){
+                    attackerType = pieceType;
+                    break;
+                }
+            }
+            if (attackerType == null){break;}
+            d++;
+            gain[d] = pieceOnSquare - gain[d - 1];
+            // Neither side can do better by going on
+            if (Math.max(-gain[d - 1], gain[d]) < 0){break;}
+            occupied ^= Long.lowestOneBit(attacker);
+            pieceOnSquare = seeValue(attackerType);
+            side = side.flip();
+        }
+        // Walk the sequence back, every side picks between stopping and recapturing
+        while (d > 0){
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+            d--;
+        }
+        return gain[0];
+    }
+
+    // Swap list reused by every SEE call of this thread
+    private final int[] seeGain = new int[32];
+
+    private static final PieceType[] SEE_ORDER = {
+            PieceType.PAWN, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN, PieceType.KING
+    };
+
+    // Every piece of both sides attacking the square through the given occupancy
+    private long attackersTo(Board board, Square square, long occupied){
+        long bishopsQueens = board.getBitboard(Piece.WHITE_BISHOP) | board.getBitboard(Piece.BLACK_BISHOP)
+                | board.getBitboard(Piece.WHITE_QUEEN) | board.getBitboard(Piece.BLACK_QUEEN);
+        long rooksQueens = board.getBitboard(Piece.WHITE_ROOK) | board.getBitboard(Piece.BLACK_ROOK)
+                | board.getBitboard(Piece.WHITE_QUEEN) | board.getBitboard(Piece.BLACK_QUEEN);
+        // A white pawn attacks the square if a black pawn standing on it would attack the pawn's square, and vice versa
+        return (Bitboard.getPawnAttacks(Side.BLACK, square) & board.getBitboard(Piece.WHITE_PAWN))
+                | (Bitboard.getPawnAttacks(Side.WHITE, square) & board.getBitboard(Piece.BLACK_PAWN))
+                | Bitboard.getKnightAttacks(square, board.getBitboard(Piece.WHITE_KNIGHT) | board.getBitboard(Piece.BLACK_KNIGHT))
+                | Bitboard.getKingAttacks(square, board.getBitboard(Piece.WHITE_KING) | board.getBitboard(Piece.BLACK_KING))
+                | (Bitboard.getBishopAttacks(occupied, square) & bishopsQueens)
+                | (Bitboard.getRookAttacks(occupied, square) & rooksQueens);
+    }
+
+    // The king can always be captured last, taking it back is never possible
+    private int seeValue(PieceType pieceType){
+        return pieceType == PieceType.KING ? 20000 : simpleEval.pieceWorthMg(pieceType);
+    }
+
+    int PST(Board board, Move move){
         // Information about the move
         Square destination = move.getTo();
         Square origin = move.getFrom();
@@ -187,15 +332,4 @@ public class Helper {
         }
         return value;
     }
-
-
-    private static class MoveInfo{
-        Move move;
-        int value;
-
-        public MoveInfo(Move move, int value){
-            this.move = move;
-            this.value = value;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package ChessEngine;
+
+/*
+Late move reductions:
+With good move ordering the moves near the end of the list almost never raise alpha, so they get searched shallower.
+Base reduction = base + ln(depth) * ln(moveNumber) / divisor (base and divisor in hundredths), precomputed in a table.
+Quiet moves with a good history are reduced less, moves that keep failing are reduced more.
+Every parameter is a UCI option so it can be tuned without recompiling.
+ */
+public class LateMoveReductions {
+    private static final int TABLE_SIZE = 64;
+    // History score worth one ply of reduction
+    private static final int HISTORY_DIVISOR = 8192;
+
+    // Defaults: 0.75 + ln(d) * ln(m) / 2.25, only from depth 3 and after the first 3 moves
+    private int base = 75;
+    private int divisor = 225;
+    private int minDepth = 3;
+    private int fullDepthMoves = 3;
+    private final int[][] table = new int[TABLE_SIZE][TABLE_SIZE];
+
+    public LateMoveReductions() {
+        initTable();
+    }
+
+    private void initTable() {
+        for (int depth = 1; depth < TABLE_SIZE; depth++) {
+            for (int moveNumber = 1; moveNumber < TABLE_SIZE; moveNumber++) {
+                table[depth][moveNumber] = (int) (base / 100.0 + Math.log(depth) * Math.log(moveNumber) * 100.0 / divisor);
+            }
+        }
+    }
+
+    // How many plies to take off a quiet move, the reduced search always keeps at least 1 ply
+    public int reduction(int depth, int moveNumber, boolean pvNode, boolean killer, int history) {
+        if (depth < minDepth || moveNumber <= fullDepthMoves) {
+            return 0;
+        }
+        int reduction = table[Math.min(depth, TABLE_SIZE - 1)][Math.min(moveNumber, TABLE_SIZE - 1)];
+        // Be more careful on the PV and with moves that already caused cutoffs
+        if (pvNode) {
+            reduction--;
+        }
+        if (killer) {
+            reduction--;
+        }
+        reduction -= history / HISTORY_DIVISOR;
+        return Math.max(0, Math.min(reduction, depth - 2));
+    }
+
+    public void setBase(int base) {
+        this.base = base;
+        initTable();
+    }
+
+    public void setDivisor(int divisor) {
+        this.divisor = Math.max(divisor, 1);
+        initTable();
+    }
+
+    public void setMinDepth(int minDepth) {
+        this.minDepth = minDepth;
+    }
+
+    public void setFullDepthMoves(int fullDepthMoves) {
+        this.fullDepthMoves = fullDepthMoves;
+    }
+}
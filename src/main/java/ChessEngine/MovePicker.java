@@ -0,0 +1,237 @@
+package ChessEngine;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import java.util.List;
+
+/*
+Staged move picker:
+Hands out one pseudo-legal move at a time and only generates/scores the next group of moves when the previous one ran out.
+- Hash move (TT move, ID move at the root), tried before anything is generated
+- Good captures (SEE >= 0, ordered by MVV-LVA)
+- Killer 1 > Killer 2 > Counter move
+- Quiet moves (queen promotions > butterfly + continuation history, PST breaks ties)
+- Bad captures (SEE < 0, least losing first)
+Q-search uses the captures only mode: hash move (if it is a capture) > good captures, losing captures are pruned.
+Moves are picked by selection on a primitive score array, so a cutoff on the first moves never sorts the rest.
+Legality is left to the caller (board.doMove returns false for illegal moves).
+One picker per ply is kept by the Engine and re-initialised at every node, so picking does not allocate.
+ */
+public class MovePicker {
+    private static final int HASH_MOVE = 0;
+    private static final int GEN_CAPTURES = 1;
+    private static final int GOOD_CAPTURES = 2;
+    private static final int KILLER_1 = 3;
+    private static final int KILLER_2 = 4;
+    private static final int COUNTER_MOVE = 5;
+    private static final int GEN_QUIETS = 6;
+    private static final int QUIETS = 7;
+    private static final int BAD_CAPTURES = 8;
+    private static final int DONE = 9;
+
+    private static final int MAX_MOVES = 256;
+    // Q search has no killers
+    private static final Move[] NO_KILLERS = new Move[2];
+    // Lifts every good capture above 0 so the picker can tell them from the (negative) SEE scores of bad ones
+    private static final int GOOD_CAPTURE = 10000;
+
+    private final Helper helper;
+    private final Move[] moves = new Move[MAX_MOVES];
+    private final int[] scores = new int[MAX_MOVES];
+
+    private Board board;
+    private Move hashMove;
+    // Killers of this ply, from the search stack
+    private Move killer1;
+    private Move killer2;
+    // Continuation index of the move that led to this node, -1 if there is none
+    private int previousIndex;
+    private Move counterMove;
+    private boolean capturesOnly;
+    private int stage;
+    // moves[current, end) are left to pick in the current stage
+    private int current;
+    private int end;
+    // Bad captures are left in place at moves[badCapturesStart, capturesEnd) until the end
+    private int badCapturesStart;
+    private int capturesEnd;
+
+    public MovePicker(Helper helper){
+        this.helper = helper;
+    }
+
+    // The hash move comes from the node's own TT probe, the picker never looks at the table itself
+    public void init(Board board, Move hashMove, Move[] killers, int previousIndex){
+        this.board = board;
+        this.hashMove = hashMove;
+        this.killer1 = killers[0];
+        this.killer2 = killers[1];
+        this.previousIndex = previousIndex;
+        this.counterMove = null;
+        this.capturesOnly = false;
+        this.stage = HASH_MOVE;
+    }
+
+    public void initCaptures(Board board, Move hashMove){
+        init(board, hashMove, NO_KILLERS, -1);
+        this.capturesOnly = true;
+    }
+
+    // Next move to search or null once every stage is exhausted
+    public Move next(){
+        while (true) {
+            switch (stage) {
+                case HASH_MOVE -> {
+                    stage = GEN_CAPTURES;
+                    if (hashMove != null && helper.isPseudoLegal(board, hashMove)
+                            && (!capturesOnly || isCapture(hashMove))) {
+                        return hashMove;
+                    }
+                }
+                case GEN_CAPTURES -> {
+                    end = 0;
+                    addCaptures(board.pseudoLegalCaptures());
+                    current = 0;
+                    capturesEnd = end;
+                    badCapturesStart = end;
+                    stage = GOOD_CAPTURES;
+                }
+                case GOOD_CAPTURES -> {
+                    if (current < end) {
+                        int best = selectBest();
+                        // Everything left is a losing capture, keep them for after the quiet moves
+                        if (scores[best] < 0) {
+                            badCapturesStart = current;
+                        } else {
+                            return take(best);
+                        }
+                    }
+                    if (capturesOnly) {
+                        // A capture losing material can't improve on standing pat
+                        stage = DONE;
+                    } else {
+                        stage = KILLER_1;
+                    }
+                }
+                case KILLER_1 -> {
+                    stage = KILLER_2;
+                    Move killer = killer1;
+                    if (isUsableKiller(killer)) {
+                        return killer;
+                    }
+                }
+                case KILLER_2 -> {
+                    stage = COUNTER_MOVE;
+                    Move killer = killer2;
+                    if (isUsableKiller(killer) && !killer.equals(killer1)) {
+                        return killer;
+                    }
+                }
+                case COUNTER_MOVE -> {
+                    stage = GEN_QUIETS;
+                    Move move = helper.getCounterMove(previousIndex);
+                    if (isUsableKiller(move) && !move.equals(killer1)
+                            && !move.equals(killer2)) {
+                        counterMove = move;
+                        return move;
+                    }
+                }
+                case GEN_QUIETS -> {
+                    current = capturesEnd;
+                    end = capturesEnd;
+                    addQuiets(board.pseudoLegalMoves());
+                    stage = QUIETS;
+                }
+                case QUIETS -> {
+                    if (current < end) {
+                        return take(selectBest());
+                    }
+                    current = badCapturesStart;
+                    end = capturesEnd;
+                    stage = BAD_CAPTURES;
+                }
+                case BAD_CAPTURES -> {
+                    if (current < end) {
+                        return take(selectBest());
+                    }
+                    stage = DONE;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private void addCaptures(List<Move> captures){
+        for (Move move : captures) {
+            if (move.equals(hashMove)) {continue;}
+            int score = helper.MVV_LVA(board, move);
+            // Taking a piece worth at least the attacker can never lose material, only the rest needs the exchange
+            int see = score >= 0 ? 0 : helper.SEE(board, move);
+            if (see < 0) {
+                score = see;
+            } else {
+                score += GOOD_CAPTURE;
+                if (move.getPromotion() == Piece.WHITE_QUEEN || move.getPromotion() == Piece.BLACK_QUEEN) {
+                    score += 2000;
+                }
+            }
+            moves[end] = move;
+            scores[end++] = score;
+        }
+    }
+
+    private void addQuiets(List<Move> allMoves){
+        for (Move move : allMoves) {
+            // Captures were already handed out in their own stages
+            if (isCapture(move) || move.equals(hashMove) || move.equals(counterMove)
+                    || move.equals(killer1) || move.equals(killer2)) {
+                continue;
+            }
+            int score;
+            if (move.getPromotion() == Piece.WHITE_QUEEN || move.getPromotion() == Piece.BLACK_QUEEN) {
+                score = 100000;
+            } else {
+                score = helper.quietHistory(board, move, previousIndex) + helper.PST(board, move);
+            }
+            moves[end] = move;
+            scores[end++] = score;
+        }
+    }
+
+    // Captures as generated by pseudoLegalCaptures, including en passant
+    private boolean isCapture(Move move){
+        return helper.isCapture(board, move);
+    }
+
+    // Killers (and counter moves) come from other nodes so they have to be checked against this position
+    private boolean isUsableKiller(Move killer){
+        return killer != null && !killer.equals(hashMove) && helper.isPseudoLegal(board, killer) && !isCapture(killer);
+    }
+
+    // Index of the highest scored move left in moves[current, end)
+    private int selectBest(){
+        int best = current;
+        for (int i = current + 1; i < end; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // Swap the picked move to the front of the remaining range and hand it out
+    private Move take(int index){
+        Move move = moves[index];
+        int score = scores[index];
+        moves[index] = moves[current];
+        scores[index] = scores[current];
+        moves[current] = move;
+        scores[current] = score;
+        current++;
+        return move;
+    }
+}
@@ -1,6 +1,7 @@
 package ChessEngine;
 
 import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
 import com.github.bhlangonijr.chesslib.move.Move;
 
 import java.time.Duration;
@@ -41,6 +42,11 @@ public class OldEngine {
     }
 
     public MinimaxInfo Think(Board board, long searchTime) {
+        return Think(board, SearchLimits.moveTime(searchTime));
+    }
+
+    // Only the time and depth limits are used, the old search does not count nodes for the manager
+    public MinimaxInfo Think(Board board, SearchLimits limits) {
         // Parameters
         int depth = 1;
         int bestChoiceDepth = 1;
@@ -48,13 +54,13 @@ public class OldEngine {
         int beta = MATE_SCORE;
         MinimaxInfo bestChoice = null;
         // Time manager class
-        SearchManager timeManager = new SearchManager(searchTime);
+        SearchManager timeManager = SearchManager.forLimits(limits);
         // We have to reset TT if it overflows
         if (TT.getCapacity() >= 100) {
             TT.clear();
         }
 
-        while (depth <= 64) {
+        while (depth <= timeManager.getMaxDepth()) {
             TOTAL_NODES = 0;
             //Starting clock
             Instant starts = Instant.now();
@@ -84,7 +90,7 @@ public class OldEngine {
             }
 
             // Check if we should stop searching
-            if (timeManager.shouldCancel()) {
+            if (timeManager.checkTime()) {
                 break;
             }
 
@@ -96,9 +102,99 @@ public class OldEngine {
     // Sorting by MVV-LVA and TT + checks and promotions
     private List<Move> moveGenerator(Board board, boolean isCapture, int ply){
         if (isCapture){
-            return boardHelper.sortMoves(board, board.pseudoLegalCaptures(), TT, ply,true);
+            return sortMoves(board, board.pseudoLegalCaptures(), TT, ply,true);
+        }
+        return sortMoves(board,board.pseudoLegalMoves(), TT, ply,false);
+    }
+
+    // Sorting by MVV-LVA, TT moves, checks, promotions and previous move from ID
+    private List<Move> sortMoves(Board board, List<Move> legalMoves, TranspositionTable transpositionTable, int ply, boolean qSearch){
+        List<MoveInfo> moveScores = new ArrayList<>();
+        List<Move> sortedMoves = new ArrayList<>();
+
+        for (Move move : legalMoves){
+            if(!board.doMove(move)){continue;}
+            board.undoMove();
+            MoveInfo moveInfo;
+            if(qSearch){
+                moveInfo = new MoveInfo(move, calculateCaptureMoveValue(board, move, transpositionTable));
+            }
+            else {
+                moveInfo = new MoveInfo(move, calculateMoveValue(board, move, transpositionTable, ply));
+            }
+            moveScores.add(moveInfo);
+        }
+
+        // sort by biggest to smallest
+        moveScores.sort((a,b) -> b.value - a.value);
+        for (MoveInfo move_info : moveScores) {
+            sortedMoves.add(move_info.move);
+        }
+        return sortedMoves;
+    }
+
+    // Calculating the value of each moves according to MVV-LVA but checking TT moves first + valuing promotions and checks
+    //Ordering scheme as such ID Move > TT move > MVV-LVA > Promotion > Killer 1 > Killer 2 > PST
+    private int calculateMoveValue(Board board, Move move, TranspositionTable transpositionTable, int ply){
+        //ID value should always be looked at first but only at root node
+
+        if (ply == 0 && move.equals(boardHelper.getIterativeDeepeningMove())) {
+            return 60000;
+        }
+
+        //Transposition value
+        long node = transpositionTable.probe(board.getZobristKey());
+        if (node != TranspositionTable.EMPTY && TranspositionTable.getPackedMove(node) == TranspositionTable.encodeMove(move)){
+            return 50000 + TranspositionTable.getDepth(node);
+        }
+        // Promotion Handling
+        if (move.getPromotion() == Piece.WHITE_QUEEN || move.getPromotion() == Piece.BLACK_QUEEN) {
+            return 35000;
+        }
+        //Capture move ordering
+        if(boardHelper.isCapture(board,move)){
+            return 30000 + boardHelper.MVV_LVA(board,move);
+        }
+        //Quiet move ordering
+        else {
+            int quietScore = 0;
+            //Killer moves
+            if (boardHelper.killerMoves[0][ply] != null && move.equals(boardHelper.killerMoves[0][ply])) {
+                quietScore = 9000;
+            }
+
+            if (boardHelper.killerMoves[1][ply] != null && move.equals(boardHelper.killerMoves[1][ply])) {
+                quietScore = 7000;
+            }
+            quietScore += boardHelper.PST(board, move);
+            return quietScore;
+        }
+    }
+
+    //Move ordering move Q-search
+    private int calculateCaptureMoveValue(Board board, Move move,TranspositionTable transpositionTable){
+        // TT values are good
+        int score = 0;
+        long node = transpositionTable.probe(board.getZobristKey());
+        if (node != TranspositionTable.EMPTY && TranspositionTable.getPackedMove(node) == TranspositionTable.encodeMove(move)){
+            score +=  4000 - TranspositionTable.getDepth(node);
+        }
+
+        if (move.getPromotion() == Piece.WHITE_QUEEN || move.getPromotion() == Piece.BLACK_QUEEN) {
+            score += 2000; // Promotions are highly prioritized
+        }
+        score += 3000 + boardHelper.MVV_LVA(board, move);
+        return score;
+    }
+
+    private static class MoveInfo{
+        Move move;
+        int value;
+
+        public MoveInfo(Move move, int value){
+            this.move = move;
+            this.value = value;
         }
-        return boardHelper.sortMoves(board,board.pseudoLegalMoves(), TT, ply,false);
     }
 
 
@@ -110,6 +206,11 @@ public class OldEngine {
             return 0;
         }
 
+        // SimpleEval has no mate term
+        if (board.isMated()) {
+            return -MATE_SCORE + ply;
+        }
+
         int stand_pat = simpleEval.positionalEvaluation(board);
         int bestValue = stand_pat;
 
@@ -152,7 +253,7 @@ public class OldEngine {
             return new MinimaxInfo(score, null);
         }
         // Time management check
-        if (timeManager.shouldCancel()) {
+        if (timeManager.checkTime()) {
             return new MinimaxInfo(0, null);
         }
 
@@ -167,20 +268,20 @@ public class OldEngine {
         }
 
         // Transposition table lookup
-        TranspositionTable.Entry entry = TT.getEntry(board.getZobristKey());
-        if (entry != null && entry.depth >= depth && ply > 0) {
-            int entryValue = entry.value;
-            Move entryMove = entry.move;
-            List<Move> entryLine = entry.mainLine;
-            int entryDepth = entry.depth;
+        long entry = TT.probe(board.getZobristKey());
+        if (entry != TranspositionTable.EMPTY && TranspositionTable.getDepth(entry) >= depth && ply > 0) {
+            int entryValue = TranspositionTable.getValue(entry);
+            Move entryMove = TranspositionTable.getMove(entry);
+            int entryDepth = TranspositionTable.getDepth(entry);
+            FLAG entryFlag = TranspositionTable.getFlag(entry);
 
             // Adjust the bestValue based on the flag
-            if (entry.flag == FLAG.EXACT) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
-            } else if (entry.flag == FLAG.LOWER && entryValue > beta) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
-            } else if (entry.flag == FLAG.UPPER && entryValue <= alpha) {
-                return new MinimaxInfo(entryValue, entryMove, entryLine, entryDepth);
+            if (entryFlag == FLAG.EXACT) {
+                return new MinimaxInfo(entryValue, entryMove, null, entryDepth);
+            } else if (entryFlag == FLAG.LOWER && entryValue > beta) {
+                return new MinimaxInfo(entryValue, entryMove, null, entryDepth);
+            } else if (entryFlag == FLAG.UPPER && entryValue <= alpha) {
+                return new MinimaxInfo(entryValue, entryMove, null, entryDepth);
             }
         }
 
@@ -198,7 +299,7 @@ public class OldEngine {
             Move move = childInfo.move;
             board.undoMove();
             if (score >= beta){
-                TT.store(board.getZobristKey(), depth, score, FLAG.LOWER, move, null);
+                TT.store(board.getZobristKey(), depth, score, FLAG.LOWER, move);
                 return new MinimaxInfo(score,null);
             }
         }
@@ -213,7 +314,7 @@ public class OldEngine {
             board.undoMove();
 
             // Time management check
-            if (timeManager.shouldCancel()) {
+            if (timeManager.checkTime()) {
                 return new MinimaxInfo(0, null);
             }
 
@@ -249,7 +350,7 @@ public class OldEngine {
         } else {
             flag = FLAG.UPPER;
         }
-        TT.store(board.getZobristKey(),  depth, bestValue, flag, bestMove, bestLine);
+        TT.store(board.getZobristKey(),  depth, bestValue, flag, bestMove);
         return new MinimaxInfo(bestValue, bestMove, bestLine, depth);
     }
     public static void main(String[] args){
@@ -0,0 +1,190 @@
+package ChessEngine;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+
+/*
+Pawn hash table:
+Pawn structure changes far less often than the rest of the position, so everything that only depends on the pawns is
+computed once per structure and cached, indexed by a hash of the two pawn bitboards.
+Cached per side and phase (midgame/endgame):
+- Passed pawns: no enemy pawn ahead on the same or adjacent files and no own pawn ahead, rewarded by rank
+- Doubled pawns: an own pawn ahead on the same file
+- Isolated pawns: no own pawn on the adjacent files
+- Backward pawns: no own pawn beside or behind on the adjacent files and the square in front is attacked by an enemy pawn
+The passed pawns and the attack spans (squares the pawns can ever attack while pushing) are kept with the scores
+for terms that need them later (outposts, passed pawn races).
+Entries store both bitboards, so a hit is always the right structure. An untouched entry is the structure without
+pawns, whose scores are 0, so it needs no empty marker.
+ */
+public class PawnTable {
+    private static final int WHITE = 0;
+    private static final int BLACK = 1;
+
+    // Weights (mg, eg), passed pawns by relative rank starting at 0
+    private static final int[] PASSED_MG = {0, 20, 30, 40, 50, 60, 70, 0};
+    private static final int[] PASSED_EG = {0, 20, 30, 40, 50, 60, 70, 0};
+    private static final int DOUBLED_MG = -10;
+    private static final int DOUBLED_EG = -20;
+    private static final int ISOLATED_MG = -10;
+    private static final int ISOLATED_EG = -15;
+    private static final int BACKWARD_MG = -8;
+    private static final int BACKWARD_EG = -10;
+
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = FILE_A << 7;
+    private static final long[] FILES = new long[8];
+    private static final long[] ADJACENT_FILES = new long[8];
+    // [side][square]: squares ahead of a pawn on its file, and ahead on the adjacent files (its attack span)
+    private static final long[][] FORWARD = new long[2][64];
+    private static final long[][] ATTACK_SPAN = new long[2][64];
+
+    static {
+        for (int file = 0; file < 8; file++) {
+            FILES[file] = FILE_A << file;
+            ADJACENT_FILES[file] = (file > 0 ? FILE_A << (file - 1) : 0) | (file < 7 ? FILE_A << (file + 1) : 0);
+        }
+        for (int square = 0; square < 64; square++) {
+            int rank = square / 8;
+            // Ranks above (white) and below (black) the square
+            long above = rank < 7 ? -1L << ((rank + 1) * 8) : 0;
+            long below = rank > 0 ? -1L >>> ((8 - rank) * 8) : 0;
+            FORWARD[WHITE][square] = FILES[square % 8] & above;
+            FORWARD[BLACK][square] = FILES[square % 8] & below;
+            ATTACK_SPAN[WHITE][square] = ADJACENT_FILES[square % 8] & above;
+            ATTACK_SPAN[BLACK][square] = ADJACENT_FILES[square % 8] & below;
+        }
+    }
+
+    // Per entry: pawns [white, black], scores [white mg, white eg, black mg, black eg], passed and attack spans [white, black]
+    private final long[] pawns;
+    private final int[] scores;
+    private final long[] passed;
+    private final long[] attackSpans;
+    private final int mask;
+    // Entry of the last evaluate call
+    private int lastEntry;
+    // Hit rate counters
+    private long probes;
+    private long hits;
+
+    public PawnTable(int mbSize) {
+        // Each entry is 64 bytes, round down to a power of 2 for the index mask
+        long entries = ((long) mbSize * 1024 * 1024) / 64;
+        int size = Integer.highestOneBit((int) Math.max(1, Math.min(entries, 1 << 24)));
+        pawns = new long[size * 2];
+        scores = new int[size * 4];
+        passed = new long[size * 2];
+        attackSpans = new long[size * 2];
+        mask = size - 1;
+    }
+
+    /*
+    Pawn structure score of the position (white minus black), tapered with the phase the evaluator uses:
+    midGame + endGame is the full phase (24 in SimpleEval).
+     */
+    public int evaluate(Board board, int midGame, int endGame) {
+        long whitePawns = board.getBitboard(Piece.WHITE_PAWN);
+        long blackPawns = board.getBitboard(Piece.BLACK_PAWN);
+        int entry = probe(whitePawns, blackPawns);
+        int mg = scores[entry * 4] - scores[entry * 4 + 2];
+        int eg = scores[entry * 4 + 1] - scores[entry * 4 + 3];
+        return (mg * midGame + eg * endGame) / (midGame + endGame);
+    }
+
+    // Passed pawns of a side (0 white, 1 black) in the position of the last evaluate call
+    public long getPassedPawns(int side) {
+        return passed[lastEntry * 2 + side];
+    }
+
+    // Every square the pawns of a side can attack while pushing, from the last evaluate call
+    public long getAttackSpan(int side) {
+        return attackSpans[lastEntry * 2 + side];
+    }
+
+    private int probe(long whitePawns, long blackPawns) {
+        probes++;
+        int entry = index(whitePawns, blackPawns);
+        lastEntry = entry;
+        if (pawns[entry * 2] == whitePawns && pawns[entry * 2 + 1] == blackPawns) {
+            hits++;
+            return entry;
+        }
+        pawns[entry * 2] = whitePawns;
+        pawns[entry * 2 + 1] = blackPawns;
+        evaluateSide(entry, WHITE, whitePawns, blackPawns);
+        evaluateSide(entry, BLACK, blackPawns, whitePawns);
+        return entry;
+    }
+
+    // Mixes both bitboards into the index, a pawn push or capture changes it completely
+    private int index(long whitePawns, long blackPawns) {
+        long hash = whitePawns * 0x9E3779B97F4A7C15L ^ blackPawns * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void evaluateSide(int entry, int side, long ownPawns, long enemyPawns) {
+        long enemyAttacks = side == WHITE ? blackPawnAttacks(enemyPawns) : whitePawnAttacks(enemyPawns);
+        int mg = 0;
+        int eg = 0;
+        long passedPawns = 0;
+        long attackSpan = 0;
+
+        long pawnBitboard = ownPawns;
+        while (pawnBitboard != 0) {
+            int square = Long.numberOfTrailingZeros(pawnBitboard);
+            int file = square % 8;
+            int relativeRank = side == WHITE ? square / 8 : 7 - square / 8;
+            attackSpan |= ATTACK_SPAN[side][square];
+
+            boolean doubled = (ownPawns & FORWARD[side][square]) != 0;
+            boolean isolated = (ownPawns & ADJACENT_FILES[file]) == 0;
+            if (!doubled && (enemyPawns & (FORWARD[side][square] | ATTACK_SPAN[side][square])) == 0) {
+                passedPawns |= 1L << square;
+                mg += PASSED_MG[relativeRank];
+                eg += PASSED_EG[relativeRank];
+            }
+            if (doubled) {
+                mg += DOUBLED_MG;
+                eg += DOUBLED_EG;
+            }
+            if (isolated) {
+                mg += ISOLATED_MG;
+                eg += ISOLATED_EG;
+            } else {
+                // Own pawns on the adjacent files that are not ahead could still come up and defend it
+                long supporters = ownPawns & ADJACENT_FILES[file] & ~ATTACK_SPAN[side][square];
+                int stopSquare = side == WHITE ? square + 8 : square - 8;
+                if (supporters == 0 && (enemyAttacks & (1L << stopSquare)) != 0) {
+                    mg += BACKWARD_MG;
+                    eg += BACKWARD_EG;
+                }
+            }
+            pawnBitboard &= pawnBitboard - 1;
+        }
+
+        scores[entry * 4 + side * 2] = mg;
+        scores[entry * 4 + side * 2 + 1] = eg;
+        passed[entry * 2 + side] = passedPawns;
+        attackSpans[entry * 2 + side] = attackSpan;
+    }
+
+    // Every square attacked by these pawns
+    static long whitePawnAttacks(long whitePawns) {
+        return ((whitePawns << 7) & ~FILE_H) | ((whitePawns << 9) & ~FILE_A);
+    }
+
+    static long blackPawnAttacks(long blackPawns) {
+        return ((blackPawns >>> 7) & ~FILE_A) | ((blackPawns >>> 9) & ~FILE_H);
+    }
+
+    // Percentage of probes that were hits since the last resetStats
+    public double getHitRate() {
+        return probes == 0 ? 0 : 100.0 * hits / probes;
+    }
+
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+    }
+}
@@ -0,0 +1,110 @@
+package ChessEngine;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Search limits:
+Everything a caller can ask of one search, whatever is not set does not limit it.
+- Clock: remaining time, increment and moves to go of the side to move (soft/hard limits, see SearchManager)
+- Move time: fixed time in milliseconds
+- Infinite: no time limit, runs until stopped (or a depth/node limit)
+- Depth and nodes: stop after this iteration / this many nodes (all threads), with a single thread a fixed depth or
+  node search always plays the same move, which keeps regression runs reproducible
+- Search moves: only these root moves are searched
+Without a clock, move time or infinite the search has no time limit, so a depth or node limit alone is enough.
+Turned into a running search by SearchManager.forLimits.
+ */
+public class SearchLimits {
+    private int maxDepth = SearchManager.MAX_DEPTH;
+    private long maxNodes = Long.MAX_VALUE;
+    private long moveTime = -1;
+    private boolean infinite = false;
+    private long timeLeft = -1;
+    private long increment = 0;
+    private int movesToGo = 0;
+    private boolean ponder = false;
+    private final List<Move> searchMoves = new ArrayList<>();
+
+    public static SearchLimits depth(int maxDepth) {
+        SearchLimits limits = new SearchLimits();
+        limits.setMaxDepth(maxDepth);
+        return limits;
+    }
+
+    public static SearchLimits moveTime(long moveTime) {
+        SearchLimits limits = new SearchLimits();
+        limits.setMoveTime(moveTime);
+        return limits;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(1, Math.min(maxDepth, SearchManager.MAX_DEPTH));
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(long maxNodes) {
+        this.maxNodes = Math.max(1, maxNodes);
+    }
+
+    public long getMoveTime() {
+        return moveTime;
+    }
+
+    public void setMoveTime(long moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    public boolean isInfinite() {
+        return infinite;
+    }
+
+    public void setInfinite(boolean infinite) {
+        this.infinite = infinite;
+    }
+
+    public long getTimeLeft() {
+        return timeLeft;
+    }
+
+    public long getIncrement() {
+        return increment;
+    }
+
+    public int getMovesToGo() {
+        return movesToGo;
+    }
+
+    // Clock of the side to move
+    public void setClock(long timeLeft, long increment, int movesToGo) {
+        this.timeLeft = timeLeft;
+        this.increment = increment;
+        this.movesToGo = movesToGo;
+    }
+
+    public boolean isPonder() {
+        return ponder;
+    }
+
+    public void setPonder(boolean ponder) {
+        this.ponder = ponder;
+    }
+
+    // Empty means every root move
+    public List<Move> getSearchMoves() {
+        return searchMoves;
+    }
+
+    public void addSearchMove(Move move) {
+        searchMoves.add(move);
+    }
+}
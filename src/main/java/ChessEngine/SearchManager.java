@@ -1,19 +1,180 @@
 package ChessEngine;
 
-import java.time.Duration;
-import java.time.Instant;
+import com.github.bhlangonijr.chesslib.move.Move;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Search limits:
+The search threads only read a volatile stop flag at every node, the clock (System.nanoTime) and the node count are
+checked once every CHECK_INTERVAL nodes per thread by poll. Anything else (the main thread when it is done, the UCI
+stop command) can end the search at any time with stop().
+
+Soft and hard limits:
+- Hard limit: the search is aborted when it is reached, even in the middle of an iteration
+- Soft limit: checked between iterations, scaled by the engine (shorter when the best move is stable, longer when
+  the best move or the score swings), and no iteration is started that can't finish before the hard limit
+A fixed search time (movetime, testers) uses the same value for both and is never scaled.
+An infinite search has no time limit at all, depth and node limits work with any of them.
+Built from a SearchLimits with forLimits, the UCI front end keeps the manager to stop the search or signal ponderhit.
+
+Pondering:
+A ponder search runs without time limits on the opponent's clock. On ponderhit the clock starts and the limits
+apply from then on, the running search keeps its iterations and TT.
+ */
 public class SearchManager {
-    private final Instant searchStartTime;
-    private final long timeLimit;
+    // Nodes a search thread visits between two clock reads
+    public static final int CHECK_INTERVAL = 2048;
+    // Deepest iteration the engine can run
+    public static final int MAX_DEPTH = 64;
+    // Time lost between sending bestmove and the clock stopping (GUI, network)
+    private static final long MOVE_OVERHEAD = 50;
+    // Next iteration is assumed to take this many times as long as the last one
+    private static final int BRANCHING_FACTOR = 2;
+
+    // Moved to the ponderhit when pondering
+    private volatile long startTime;
+    private volatile long hardDeadline;
+    private final long softLimit;
+    private final long hardLimit;
+    private final boolean flexible;
+    private final boolean timed;
+    private int maxDepth = MAX_DEPTH;
+    private long maxNodes = Long.MAX_VALUE;
+    // Root moves the search is restricted to, empty for all of them
+    private List<Move> searchMoves = List.of();
+    // Nodes searched by every thread together, only updated every check interval
+    private final AtomicLong nodes = new AtomicLong();
+    // Set once the search has to end, read by every search thread
+    private volatile boolean stopped;
+    private volatile boolean pondering;
 
     public SearchManager(long timeLimitMillis) {
-        this.searchStartTime = Instant.now();
-        this.timeLimit = timeLimitMillis;
+        this(timeLimitMillis, timeLimitMillis, false, true);
+    }
+
+    private SearchManager(long softLimitMillis, long hardLimitMillis, boolean flexible, boolean timed) {
+        this.softLimit = softLimitMillis * 1_000_000L;
+        this.hardLimit = hardLimitMillis * 1_000_000L;
+        this.startTime = System.nanoTime();
+        this.hardDeadline = startTime + hardLimit;
+        this.flexible = flexible;
+        this.timed = timed;
+    }
+
+    // Runs until stopped (or a depth/node limit is reached)
+    public static SearchManager infinite() {
+        return new SearchManager(0, 0, false, false);
+    }
+
+    // Picks the time control from the limits (infinite > move time > clock, none of them means no time limit)
+    public static SearchManager forLimits(SearchLimits limits) {
+        SearchManager manager;
+        if (limits.isInfinite()) {
+            manager = infinite();
+        } else if (limits.getMoveTime() >= 0) {
+            manager = new SearchManager(limits.getMoveTime());
+        } else if (limits.getTimeLeft() >= 0) {
+            manager = forClock(limits.getTimeLeft(), limits.getIncrement(), limits.getMovesToGo());
+        } else {
+            manager = infinite();
+        }
+        manager.maxDepth = limits.getMaxDepth();
+        manager.maxNodes = limits.getMaxNodes();
+        manager.searchMoves = List.copyOf(limits.getSearchMoves());
+        manager.pondering = limits.isPonder();
+        return manager;
+    }
+
+    /*
+    Time for one move out of the remaining clock:
+    The remaining time is spread over the moves left to the next time control (or an estimate of them) plus most of
+    the increment, but never more than a quarter of the clock (a big increment with little time left would otherwise
+    spend the whole clock). The hard limit allows up to 4 times that and is capped at a third of the clock last.
+     */
+    public static SearchManager forClock(long remainingMillis, long incrementMillis, int movesToGo) {
+        long available = Math.max(remainingMillis - MOVE_OVERHEAD, 1);
+        if (movesToGo <= 0) {
+            // Sudden death: plan for more moves the more time there is, so we use time aggressively when it runs low
+            if (remainingMillis > 300000) {     // More than 5 minutes
+                movesToGo = 50;
+            } else if (remainingMillis > 120000) { // 2-5 minutes
+                movesToGo = 40;
+            } else if (remainingMillis > 60000) {  // 1-2 minutes
+                movesToGo = 30;
+            } else if (remainingMillis > 30000) {  // 30-60 seconds
+                movesToGo = 25;
+            } else {                               // Less than 30 seconds
+                movesToGo = 20;
+            }
+        }
+        long softLimit = Math.min(available / movesToGo + incrementMillis * 3 / 4, available / 4);
+        long hardLimit = Math.min(softLimit * 4, available / 3);
+        return new SearchManager(Math.max(softLimit, 1), Math.max(hardLimit, 1), true, true);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public List<Move> getSearchMoves() {
+        return searchMoves;
+    }
+
+    // Small node limits get checked more often so the search does not overshoot them by a whole interval
+    public int getCheckInterval() {
+        return (int) Math.max(1, Math.min(CHECK_INTERVAL, maxNodes / 64));
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isPondering() {
+        return pondering;
     }
 
+    // The opponent played the expected move, our clock runs from now on
+    public void ponderHit() {
+        startTime = System.nanoTime();
+        hardDeadline = startTime + hardLimit;
+        pondering = false;
+    }
+
+    // Hot path, a single volatile read
     public boolean shouldCancel() {
-        long elapsed = Duration.between(searchStartTime, Instant.now()).toMillis();
-        return elapsed >= timeLimit;
+        return stopped;
+    }
+
+    // Called by a search thread every check interval with the nodes it searched since the last call
+    public boolean poll(int searchedNodes) {
+        if (nodes.addAndGet(searchedNodes) >= maxNodes) {
+            stopped = true;
+        }
+        return checkTime();
+    }
+
+    // Reads the clock and raises the stop flag once the hard limit is reached
+    public boolean checkTime() {
+        if (!stopped && timed && !pondering && System.nanoTime() - hardDeadline >= 0) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    // Between iterations: is there time for another one? scale stretches or shrinks the soft limit
+    public boolean canStartIteration(double scale, long lastIterationMillis) {
+        if (checkTime()) {
+            return false;
+        }
+        if (!timed || pondering) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long softDeadline = startTime + (flexible ? (long) (softLimit * scale) : softLimit);
+        // Not worth starting what the hard limit would cut off anyway
+        long expectedEnd = now + lastIterationMillis * 1_000_000L * BRANCHING_FACTOR;
+        return now - softDeadline < 0 && expectedEnd - hardDeadline < 0;
     }
 }
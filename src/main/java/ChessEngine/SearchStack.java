@@ -0,0 +1,39 @@
+package ChessEngine;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/*
+One ply of the search stack:
+The engine keeps one entry per ply, allocated once, so a node can store what it knows for its children and read
+what its parent (or grandparent) found without any allocation.
+ */
+public class SearchStack {
+    // No static eval (the side to move is in check)
+    public static final int NO_EVAL = Integer.MIN_VALUE;
+
+    // Static eval of the node, computed at most once
+    int staticEval = NO_EVAL;
+    // Static eval is better than two plies ago (same side to move)
+    boolean improving;
+    // Quiet moves that caused beta cutoffs at this ply
+    final Move[] killers = new Move[2];
+    // Move being searched from this node and its continuation index (piece, destination), null and -1 for a null move
+    Move currentMove;
+    int continuationIndex = -1;
+    // Move to skip when searching the position without it (singular extensions), nothing sets it yet
+    Move excludedMove;
+    // Quiet moves tried so far, they lose history when a later quiet move causes the cutoff
+    final Move[] quietsSearched = new Move[256];
+    int quietCount;
+
+    void storeKiller(Move move) {
+        if (!move.equals(killers[0])) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+    }
+
+    boolean isKiller(Move move) {
+        return move.equals(killers[0]) || move.equals(killers[1]);
+    }
+}
@@ -2,7 +2,49 @@ package ChessEngine;
 import com.github.bhlangonijr.chesslib.*;
 
 public class SimpleEval {
-    private static final int MATE_SCORE = 5000;
+    private static final int EVAL_CACHE_MB = 2;
+    private static final int PAWN_TABLE_MB = 1;
+    // Material + PST of every piece on every square (white positive, black negative) for the incremental evaluation
+    private final int[][] mgValues = new int[Piece.values().length][64];
+    private final int[][] egValues = new int[Piece.values().length][64];
+    // Null when caching is turned off
+    private final EvalCache evalCache;
+    private final PawnTable pawnTable;
+
+    public SimpleEval(){
+        this(EVAL_CACHE_MB, PAWN_TABLE_MB);
+    }
+
+    public SimpleEval(int evalCacheMb){
+        this(evalCacheMb, PAWN_TABLE_MB);
+    }
+
+    /*
+    A size of 0 turns the eval cache off, every call evaluates from scratch, and leaves the pawn table a single entry.
+    Users that only read piece values and tables (Helper) pass 0, 0 so they carry no tables.
+     */
+    public SimpleEval(int evalCacheMb, int pawnTableMb){
+        evalCache = evalCacheMb > 0 ? new EvalCache(evalCacheMb) : null;
+        pawnTable = new PawnTable(pawnTableMb);
+        // Same values positionalEvaluation adds up, black reads the tables as they are and white reads them flipped
+        for (Piece piece : Piece.allPieces){
+            PieceType pieceType = piece.getPieceType();
+            int sign = piece.getPieceSide() == Side.WHITE ? 1 : -1;
+            for (int i = 0; i < 64; i++){
+                int square = piece.getPieceSide() == Side.WHITE ? flip(i) : i;
+                mgValues[piece.ordinal()][i] = sign * (mgTable(pieceType)[square] + pieceWorthMg(pieceType));
+                egValues[piece.ordinal()][i] = sign * (egTable(pieceType)[square] + pieceWorthEg(pieceType));
+            }
+        }
+    }
+
+    public EvalCache getEvalCache(){
+        return evalCache;
+    }
+
+    public PawnTable getPawnTable(){
+        return pawnTable;
+    }
 
     public int flip(int index){
         return index ^ 56;
@@ -182,7 +224,119 @@ public class SimpleEval {
             -27, -11,   4,  13,  14,   4,  -5, -17,
             -53, -34, -21, -11, -28, -14, -24, -43};
 
+    // Midgame material + PST of a piece on a square, black pieces count negative
+    public int mgValue(Piece piece, int square){
+        return mgValues[piece.ordinal()][square];
+    }
+
+    public int egValue(Piece piece, int square){
+        return egValues[piece.ordinal()][square];
+    }
+
+    // Game phase weight of a single piece, see gamePhase
+    public int phaseValue(PieceType pieceType){
+        return switch (pieceType){
+            case KNIGHT, BISHOP -> 1;
+            case ROOK -> 2;
+            case QUEEN -> 4;
+            case null, default -> 0;
+        };
+    }
+
+    private int[] mgTable(PieceType pieceType){
+        return switch (pieceType){
+            case PAWN -> pawn_table_md;
+            case KNIGHT -> knight_table_md;
+            case BISHOP -> bishop_table_md;
+            case ROOK -> rook_table_md;
+            case QUEEN -> queen_table_md;
+            case null, default -> king_table_md;
+        };
+    }
+
+    private int[] egTable(PieceType pieceType){
+        return switch (pieceType){
+            case PAWN -> pawn_table_eg;
+            case KNIGHT -> knight_table_eg;
+            case BISHOP -> bishop_table_eg;
+            case ROOK -> rook_table_eg;
+            case QUEEN -> queen_table_eg;
+            case null, default -> king_table_eg;
+        };
+    }
+
+    /*
+    Same result as positionalEvaluation(board) but material, PST and game phase come from the accumulator the search
+    keeps up to date. What is left per node is the slider/king mobility (one attack lookup per piece) and the pawn
+    table probe, there is no mate probe: the search scores mate and stalemate when a node has no legal move.
+    Both versions share the eval cache since they give the same value.
+     */
+    public int positionalEvaluation(Board board, EvalAccumulator accumulator){
+        if (evalCache == null){
+            return evaluate(board, accumulator);
+        }
+        long key = board.getZobristKey();
+        int value = evalCache.probe(key);
+        if (value == EvalCache.MISS){
+            value = evaluate(board, accumulator);
+            evalCache.store(key, value);
+        }
+        return value;
+    }
+
+    private int evaluate(Board board, EvalAccumulator accumulator){
+        int midGame = Math.min(accumulator.getPhase(), 24);
+        int endGame = 24 - midGame;
+        boolean isEndGame = endGame > 13;
+        int value = accumulator.getMg() * midGame + accumulator.getEg() * endGame;
+        value += mobility(board, Side.WHITE, isEndGame);
+        // positionalEvaluation adds black mobility twice, kept so both give the same eval
+        value -= 2 * mobility(board, Side.BLACK, isEndGame);
+        //Material and positional + mobility
+        int finalEval = value / 24;
+        //Adding some other eval characteristics
+        finalEval += pawnTable.evaluate(board, midGame, endGame);
+        int sideToMove = board.getSideToMove() == Side.WHITE ? 1 : -1;
+        return finalEval * sideToMove;
+    }
+
+    // Only sliders and the king (as a queen) have a mobility value
+    private int mobility(Board board, Side side, boolean isEndGame){
+        long occupied = board.getBitboard();
+        long notOwn = ~board.getBitboard(side);
+        int mobility = 0;
+        for (PieceType pieceType : MOBILITY_PIECES){
+            long pieceBitboard = board.getBitboard(Piece.make(side, pieceType));
+            while (pieceBitboard != 0){
+                Square square = Square.squareAt(Long.numberOfTrailingZeros(pieceBitboard));
+                long attacks = switch (pieceType){
+                    case ROOK -> Bitboard.getRookAttacks(occupied, square);
+                    case BISHOP -> Bitboard.getBishopAttacks(occupied, square);
+                    default -> Bitboard.getQueenAttacks(occupied, square);
+                };
+                mobility += Long.bitCount(attacks & notOwn) * getMobilityValue(pieceType, isEndGame);
+                pieceBitboard &= pieceBitboard - 1;
+            }
+        }
+        return mobility;
+    }
+
+    private static final PieceType[] MOBILITY_PIECES = {PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN, PieceType.KING};
+
     public int positionalEvaluation(Board board){
+        if (evalCache == null){
+            return evaluate(board);
+        }
+        long key = board.getZobristKey();
+        int value = evalCache.probe(key);
+        if (value == EvalCache.MISS){
+            value = evaluate(board);
+            evalCache.store(key, value);
+        }
+        return value;
+    }
+
+    private int evaluate(Board board){
         // Determine game phase
         int midGame = gamePhase(board)[0];
         int endGame = gamePhase(board)[1];
@@ -271,49 +425,12 @@ public class SimpleEval {
         int finalEval = (valueWhite - valueBlack) / 24;
 
         //Adding some other eval characteristics
-        finalEval += checkMate(board);
-        finalEval += passedPawns(board);
+        finalEval += pawnTable.evaluate(board, midGame, endGame);
 
         int sideToMove = board.getSideToMove() == Side.WHITE ? 1 : -1;
         return finalEval * sideToMove;
     }
 
-    private int checkMate(Board board) {
-        if (board.isMated()) {
-            // Assign mate score relative to the player to move
-            return -MATE_SCORE;
-        }
-        return 0; // No checkmate
-    }
-
-    private int passedPawns(Board board){
-        long blackPawnBitboard = board.getBitboard(Piece.BLACK_PAWN);
-        long whitePawnBitboard = board.getBitboard(Piece.WHITE_PAWN);
-        int baseReward = 10;
-        int whitePassedPawnValue = 0;
-        int blackPassedPawnValue = 0;
-
-        for (int file = 0; file < 8; file++) {
-            long fileMask = 0x0101010101010101L << file;
-            long fileMaskRight = file < 7 ? fileMask << 1 : 0;
-            long fileMaskLeft = file > 0 ? fileMask >> 1 : 0;
-
-            // Check for passed pawns
-            if ((whitePawnBitboard & fileMask) != 0 &&
-                    (blackPawnBitboard & (fileMask | fileMaskRight | fileMaskLeft)) == 0) {
-                int rank = Long.numberOfTrailingZeros(whitePawnBitboard & fileMask) / 8 + 1;
-                whitePassedPawnValue += rank * baseReward;
-            }
-
-            if ((blackPawnBitboard & fileMask) != 0 &&
-                    (whitePawnBitboard & (fileMask | fileMaskRight | fileMaskLeft)) == 0) {
-                int rank = 8 - Long.numberOfTrailingZeros(Long.highestOneBit(blackPawnBitboard & fileMask)) / 8;
-                blackPassedPawnValue += rank * baseReward;
-            }
-        }
-        return (whitePassedPawnValue - blackPassedPawnValue);
-    }
-
     public static void main (String[] args){
         Board board = new Board();
         board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/5P2/PPPPP1PP/RNBQKBNR b KQkq - 0 1");
@@ -1,83 +1,183 @@
 package ChessEngine;
 
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
 import com.github.bhlangonijr.chesslib.move.Move;
 import java.util.Arrays;
-import java.util.List;
 
+/*
+Packed transposition table:
+Every slot is two longs in one flat array, [key ^ data, data], so storing never allocates and the GC never has to scan the table.
+Slots are grouped in buckets of 4 (64 bytes, one cache line), a position can live in any slot of its bucket.
+
+Lock-free sharing between search threads:
+Two threads can write the same slot at the same time and a reader can then see the key of one write with the data of
+the other. Storing key ^ data instead of the key means such a torn slot no longer matches the key it is probed with,
+so it reads as a miss instead of handing back another position's move and score. The array is plain long[], and the
+JMM lets a non-volatile long read or write tear into two 32 bit halves, so a word can even mix two stores. A torn
+word fails the key ^ data check like any other mismatched pair, so it is rejected the same way.
+Data layout (low bits first):
+- move  16 bits (from 6 | to 6 | promotion piece 4)
+- depth  8 bits (signed)
+- flag   2 bits (FLAG ordinal + 1, so an empty slot is always 0)
+- age    6 bits (search generation the entry was written in)
+- value 32 bits (signed)
+ */
 public class TranspositionTable {
-    private int size;
-    private final Entry[] table;
+    // Returned by probe when the position is not in its bucket
+    public static final long EMPTY = 0L;
+
+    private static final int BUCKET_SIZE = 4;
+    // longs per bucket, 2 per slot
+    private static final int BUCKET_LONGS = BUCKET_SIZE * 2;
+
+    private static final int DEPTH_SHIFT = 16;
+    private static final int FLAG_SHIFT = 24;
+    private static final int AGE_SHIFT = 26;
+    private static final int VALUE_SHIFT = 32;
+    private static final int AGE_MASK = 63;
+
+    private static final FLAG[] FLAGS = FLAG.values();
+    private static final Piece[] PIECES = Piece.values();
+    private static final Square[] SQUARES = Square.values();
+
+    private final long[] table;
+    private final int mask;
+    // Bumped once per search, entries from older searches are replaced first
+    private int generation;
 
     public TranspositionTable(int mbSize) {
-        // Calculate number of entries based on memory size
-        // Entry size ≈ 32 bytes (long + 4 ints + Move object + flag)
-        int numEntries = (mbSize * 1024 * 1024) / 32;
-        // Round to power of 2 for efficient modulo
-        int tableSize = Integer.highestOneBit(numEntries);
-        table = new Entry[tableSize];
-    }
-
-    public static class Entry{
-        long key;
-        int depth;
-        int value;
-        FLAG flag;
-        Move move;
-        List<Move> mainLine;
-
-        public Entry(long key, int depth, int value, FLAG flag, Move move, List<Move> mainLine){
-            this.key = key;
-            this.depth = depth;
-            this.value = value;
-            this.flag = flag;
-            this.move = move;
-            this.mainLine = mainLine;
-        }
+        // Calculate number of buckets based on memory size, each bucket is 64 bytes (4 slots of 2 longs)
+        long numBuckets = ((long) mbSize * 1024 * 1024) / (BUCKET_LONGS * 8);
+        // Round to power of 2 for efficient modulo (a Java array holds at most 2^27 buckets of 8 longs)
+        int tableSize = Integer.highestOneBit((int) Math.max(1, Math.min(numBuckets, 1 << 27)));
+        table = new long[tableSize * BUCKET_LONGS];
+        mask = tableSize - 1;
     }
+
     //clearing table
     public void clear(){
-        Arrays.fill(table, null);
-        size = 0;
+        Arrays.fill(table, 0L);
+        generation = 0;
     }
 
-    public boolean containsKey(long key){
-        int index = index(key);
-        Entry entry = table[index];
-        return entry != null && entry.key == key;
+    // Called at the start of every search so entries from previous moves age instead of being wiped
+    public void newSearch(){
+        generation = (generation + 1) & AGE_MASK;
     }
 
-    //generate index
+    //generate index of the first slot of the bucket
     private int index(long key){
-        return (int) (key & (table.length - 1));
+        return (int) (key & mask) * BUCKET_LONGS;
     }
 
-    // Get entry from table
-    public Entry getEntry(long key){
-        int index = index(key);
-        if(containsKey(key)){
-            return table[index];
+    // Get the packed data of an entry or EMPTY if the position is not stored
+    public long probe(long key){
+        int bucket = index(key);
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += 2){
+            long data = table[i + 1];
+            if (data != EMPTY && (table[i] ^ data) == key){
+                return data;
+            }
         }
-        return null;
+        return EMPTY;
     }
 
-    // Get the percentage filled
+    // Get the percentage filled by the current search (sampled over the first 1000 buckets)
     public double getCapacity(){
-        return (double) size / table.length;
+        int samples = Math.min(1000, mask + 1);
+        int used = 0;
+        for (int i = 0; i < samples * BUCKET_LONGS; i += 2){
+            long data = table[i + 1];
+            if (data != EMPTY && getAge(data) == generation){
+                used++;
+            }
+        }
+        return (double) used / (samples * BUCKET_SIZE);
     }
 
     //storing data
-    public void store(long key, int depth, int value, FLAG flag, Move move, List<Move> mainLine){
-        int index = index(key);
-        Entry oldEntry = table[index];
+    public void store(long key, int depth, int value, FLAG flag, Move move){
+        int bucket = index(key);
+        int victim = bucket;
+        int victimWorth = Integer.MAX_VALUE;
 
-        if (oldEntry == null || replace(oldEntry,key,depth)){
-            table[index] = new Entry(key,depth,value,flag,move,mainLine);
-            size++;
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += 2){
+            long data = table[i + 1];
+            // Same position: only overwrite with a deeper, exact or newer result
+            // (a Q search result, depth <= 0, never replaces a main search result of the same search)
+            if (data != EMPTY && (table[i] ^ data) == key){
+                if ((flag != FLAG.EXACT || depth <= 0) && depth < getDepth(data) && getAge(data) == generation){
+                    return;
+                }
+                // Keep the old best move if this search did not find one
+                int packedMove = move != null ? encodeMove(move) : getPackedMove(data);
+                write(i, key, pack(depth, value, flag, packedMove, generation));
+                return;
+            }
+            // Empty slot, nothing to replace
+            if (data == EMPTY){
+                victim = i;
+                victimWorth = Integer.MIN_VALUE;
+            }
+            // Otherwise replace the shallowest entry, entries from older searches count as shallower
+            else if (victimWorth != Integer.MIN_VALUE){
+                int worth = getDepth(data) - 8 * ((generation - getAge(data)) & AGE_MASK);
+                if (worth < victimWorth){
+                    victim = i;
+                    victimWorth = worth;
+                }
+            }
         }
+        write(victim, key, pack(depth, value, flag, encodeMove(move), generation));
+    }
+
+    private void write(int slot, long key, long data){
+        table[slot] = key ^ data;
+        table[slot + 1] = data;
+    }
+
+    private static long pack(int depth, int value, FLAG flag, int move, int age){
+        return (move & 0xFFFFL)
+                | ((depth & 0xFFL) << DEPTH_SHIFT)
+                | ((long) (flag.ordinal() + 1) << FLAG_SHIFT)
+                | ((long) age << AGE_SHIFT)
+                | ((long) value << VALUE_SHIFT);
+    }
+
+    // Unpacking helpers for the data word returned by probe
+    public static int getDepth(long data){
+        return (byte) (data >>> DEPTH_SHIFT);
+    }
+
+    public static int getValue(long data){
+        return (int) (data >> VALUE_SHIFT);
+    }
+
+    public static FLAG getFlag(long data){
+        return FLAGS[(int) ((data >>> FLAG_SHIFT) & 3) - 1];
+    }
+
+    private static int getAge(long data){
+        return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+    }
+
+    public static int getPackedMove(long data){
+        return (int) (data & 0xFFFF);
+    }
+
+    public static Move getMove(long data){
+        return decodeMove(getPackedMove(data));
+    }
+
+    // 16 bit move encoding, 0 means no move (a1a1 can never be played)
+    public static int encodeMove(Move move){
+        if (move == null){return 0;}
+        return move.getFrom().ordinal() | (move.getTo().ordinal() << 6) | (move.getPromotion().ordinal() << 12);
     }
 
-    private boolean replace(Entry currEntry, long newEntryKey, int newEntryDepth){
-        if (currEntry.key != newEntryKey){return true;}
-        return currEntry.depth < newEntryDepth;
+    public static Move decodeMove(int packedMove){
+        if (packedMove == 0){return null;}
+        return new Move(SQUARES[packedMove & 63], SQUARES[(packedMove >>> 6) & 63], PIECES[(packedMove >>> 12) & 15]);
     }
 }
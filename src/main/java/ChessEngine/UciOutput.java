@@ -0,0 +1,67 @@
+package ChessEngine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+UCI output:
+Lines are queued by whichever thread produces them (stdin loop, search thread) and written by a single writer thread,
+so the search never waits on the console. The buffer is flushed whenever the queue runs dry, so the GUI gets every
+line right away without a flush per line under load.
+ */
+public class UciOutput {
+    // Marks the end of the output, compared by reference
+    private static final String CLOSE = new String("");
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Writer writer;
+    private final Thread writerThread;
+
+    public UciOutput(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out));
+        this.writerThread = new Thread(this::writeLines, "uci-output");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Never blocks, the line is written in the background
+    public void send(String line) {
+        queue.add(line);
+    }
+
+    // Writes everything still queued and stops the writer thread
+    public void close() {
+        queue.add(CLOSE);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLines() {
+        try {
+            while (true) {
+                String line = queue.take();
+                if (line == CLOSE) {
+                    writer.flush();
+                    return;
+                }
+                writer.write(line);
+                writer.write('\n');
+                if (queue.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("UCI output failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,10 +6,34 @@ import com.github.bhlangonijr.chesslib.move.Move;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
+/*
+UCI front end:
+The stdin loop never searches itself, every go starts a search thread so stop, isready and quit are answered
+while the engine thinks. The search thread writes bestmove as soon as the search ends or is stopped.
+Supported go parameters: wtime/btime/winc/binc/movestogo, movetime, depth, nodes, infinite, ponder, searchmoves.
+Pondering: the GUI sends the position after the expected reply and go ponder, the search runs on the opponent's
+clock and ponderhit turns it into the normal timed search. bestmove carries the ponder move when Ponder is on.
+Positions: when a position command only adds moves to the previous one, just the new moves are played on the live
+board, so the game history (repetition detection) survives and long games are not replayed every move.
+ */
 public class uciLichess {
+    // Search running in the background, null when idle
+    private static Thread searchThread;
+    private static SearchManager searchManager;
+    // Released by stop/quit (and ponderhit), an infinite or ponder search holds back its bestmove until then
+    private static CountDownLatch stopSignal;
+    // UCI Ponder option, the GUI only lets us ponder when it is on
+    private static boolean ponderEnabled = false;
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    // Position the live board was set up from and the moves played on it since
+    private static String lastBaseFen = null;
+    private static final List<String> lastMoves = new ArrayList<>();
+
     public static void main(String[] args) throws Exception {
         //Declare new board
         Board board = new Board();
@@ -19,111 +43,280 @@ public class uciLichess {
         SmallOpeningBook smallOpeningBook = new SmallOpeningBook();
         //Other readers
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-        Writer writer = new OutputStreamWriter(System.out);
+        // Everything the GUI reads goes through the output queue, debug text goes to stderr
+        UciOutput output = new UciOutput(System.out);
+        engine.setInfoListener(output::send);
         String input;
 
         while ((input = reader.readLine()) != null) {
             // Extract the prefix of the input to match the switch case
             String command = input.split(" ")[0]; // Extracts the command (e.g., "uci", "isready", etc.)
-            String fen = "";
             switch (command) {
                 case "uci":
-                    writer.write("uciok\n");
-                    writer.flush();
+                    output.send("id name KingBobIV");
+                    output.send("option name Threads type spin default 1 min 1 max 64");
+                    output.send("option name Ponder type check default false");
+                    output.send("option name MultiPV type spin default 1 min 1 max 64");
+                    output.send("option name LMRBase type spin default 75 min 0 max 300");
+                    output.send("option name LMRDivisor type spin default 225 min 50 max 1000");
+                    output.send("option name LMRMinDepth type spin default 3 min 1 max 16");
+                    output.send("option name LMRFullDepthMoves type spin default 3 min 1 max 32");
+                    output.send("uciok");
+                    break;
+
+                case "setoption":
+                    waitForSearch();
+                    setOption(engine, input);
                     break;
 
                 case "isready":
-                    writer.write("readyok\n");
-                    writer.flush();
+                    output.send("readyok");
                     break;
 
                 case "position":
-                    fen = toFen(input);
-                    board.loadFromFen(fen);
-                    writer.flush();
+                    waitForSearch();
+                    setPosition(board, input);
                     break;
 
                 case "go":
-                    if(smallOpeningBook.openingBook.containsKey(board.getZobristKey())){
-                        System.out.println("Play opening move");
+                    waitForSearch();
+                    // A book move can't be sent while pondering, bestmove has to wait for ponderhit or stop
+                    if(!hasToken(input, "ponder") && smallOpeningBook.openingBook.containsKey(board.getZobristKey())){
+                        System.err.println("Play opening move");
                         Move openingMove = smallOpeningBook.openingBook.get(board.getZobristKey());
-                        writer.write("bestmove " + openingMove + "\n");
+                        output.send("bestmove " + openingMove);
                     }
                     else {
-                        //Get the time to search
-                        long timeSearch = timeManagement(board, input);
-                        // Running my engine
-                        Engine.MinimaxInfo engine_choice = engine.Think(board, timeSearch);
-                        //Getting move
-                        Move bestMove = engine_choice.move;
-                        int engine_state_value = engine_choice.state_value;
-                        //Printing debug
-                        System.out.println("Best move:" + bestMove + " State value:" + (float) engine_state_value / 100);
-                        //Write to console
-                        writer.write("bestmove " + bestMove + "\n");
+                        // The live board keeps the game history, nothing else touches it until the search is over
+                        startSearch(engine, board, input, output);
+                    }
+                    break;
+
+                case "stop":
+                    stopSearch();
+                    break;
+
+                case "ponderhit":
+                    if (searchManager != null) {
+                        searchManager.ponderHit();
+                        stopSignal.countDown();
                     }
-                    writer.flush();
                     break;
 
                 case "quit":
-                    writer.close();
+                    stopSearch();
+                    output.close();
                     return;
 
                 default:
-                    writer.write("Unknown command\n");
-                    writer.flush();
+                    // Commands we do not handle (ucinewgame, debug, ...) are ignored, the GUI only reads UCI replies
+                    System.err.println("Unknown command: " + input);
                     break;
             }
         }
+        // stdin closed without quit, the GUI is gone: end the search and write out what is still queued
+        stopSearch();
+        output.close();
     }
-    public static String toFen(String input){
-        Board board = new Board();
-        for (String i : input.split(" ")){
-            if (!i.equals("position") && !i.equals("startpos") && !i.equals("moves")){
-                board.doMove(i);
+    private static void startSearch(Engine engine, Board board, String input, UciOutput output){
+        SearchLimits limits = searchLimits(board, input);
+        // Kept here so stop and ponderhit can reach the search
+        SearchManager timeManager = SearchManager.forLimits(limits);
+        boolean infinite = limits.isInfinite();
+        CountDownLatch signal = new CountDownLatch(1);
+
+        searchManager = timeManager;
+        stopSignal = signal;
+        searchThread = new Thread(() -> {
+            // Running my engine
+            Engine.MinimaxInfo engine_choice = engine.Think(board, timeManager);
+            // UCI: an infinite search only reports its move after stop, a ponder search after ponderhit or stop
+            if (infinite || timeManager.isPondering()) {
+                awaitSignal(signal);
+            }
+            //Getting move, a search stopped before depth 1 finished falls back to any legal move
+            Move bestMove = engine_choice != null ? engine_choice.move : null;
+            if (bestMove == null) {
+                List<Move> legalMoves = board.legalMoves();
+                bestMove = legalMoves.isEmpty() ? null : legalMoves.get(0);
+            }
+            //Printing debug
+            if (engine_choice != null) {
+                System.err.println("Best move:" + bestMove + " State value:" + (float) engine_choice.state_value / 100);
+            }
+            //Write to console, the reply we expect from the PV is what we ponder on next
+            String ponderMove = "";
+            if (ponderEnabled && engine_choice != null && bestMove == engine_choice.move && engine_choice.main_line.size() > 1) {
+                ponderMove = " ponder " + engine_choice.main_line.get(1);
+            }
+            output.send("bestmove " + (bestMove != null ? bestMove : "0000") + ponderMove);
+        });
+        searchThread.start();
+    }
+
+    // Ends the running search right away, its bestmove is queued before this returns
+    private static void stopSearch(){
+        if (searchThread == null) {return;}
+        searchManager.stop();
+        stopSignal.countDown();
+        waitForSearch();
+    }
+
+    // Commands changing the position or the engine wait for the search to end on its own
+    private static void waitForSearch(){
+        if (searchThread == null) {return;}
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+        searchManager = null;
+        stopSignal = null;
+    }
+
+    private static void awaitSignal(CountDownLatch signal){
+        try {
+            signal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean hasToken(String input, String token){
+        for (String part : input.split(" ")){
+            if (part.equals(token)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Value after a go parameter or -1 when it is missing (or not a number, which is ignored like a missing one)
+    private static long goParameter(String input, String name){
+        String[] inputParts = input.split(" ");
+        for (int i = 0; i < inputParts.length - 1; i++){
+            if (inputParts[i].equals(name)){
+                try {
+                    return Long.parseLong(inputParts[i + 1]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring go " + name + ": not a number: " + inputParts[i + 1]);
+                    return -1;
+                }
             }
         }
-        return board.getFen();
+        return -1;
     }
 
-    public static long timeManagement(Board board,String input){
-        String side;
-        String time = "10000";
-        if (board.getSideToMove() == Side.WHITE){
-            side = "wtime";
+    /*
+    go [searchmoves <move1> ... <movei>] [ponder] [wtime <x>] [btime <x>] [winc <x>] [binc <x>] [movestogo <x>]
+       [depth <x>] [nodes <x>] [movetime <x>] [infinite]
+    Without any limit the old default of a 10 second clock is used.
+     */
+    public static SearchLimits searchLimits(Board board, String input){
+        SearchLimits limits = new SearchLimits();
+        long moveTime = goParameter(input, "movetime");
+        long depth = goParameter(input, "depth");
+        long nodes = goParameter(input, "nodes");
+
+        limits.setInfinite(hasToken(input, "infinite"));
+        limits.setPonder(hasToken(input, "ponder"));
+        limits.setMoveTime(moveTime);
+        if (depth > 0) {
+            limits.setMaxDepth((int) depth);
+        }
+        if (nodes > 0) {
+            limits.setMaxNodes(nodes);
         }
-        else{
-            side = "btime";
+        boolean clock = goParameter(input, "wtime") >= 0 || goParameter(input, "btime") >= 0;
+        if (clock || (moveTime < 0 && depth < 0 && nodes < 0 && !limits.isInfinite())) {
+            String side = board.getSideToMove() == Side.WHITE ? "w" : "b";
+            long time = goParameter(input, side + "time");
+            long increment = goParameter(input, side + "inc");
+            long movesToGo = goParameter(input, "movestogo");
+            limits.setClock(time >= 0 ? time : 10000, Math.max(increment, 0), (int) Math.max(movesToGo, 0));
         }
+
+        // searchmoves runs until the next go parameter
         String[] inputParts = input.split(" ");
+        boolean inSearchMoves = false;
+        for (String part : inputParts){
+            if (part.equals("searchmoves")){
+                inSearchMoves = true;
+            } else if (inSearchMoves && GO_PARAMETERS.contains(part)){
+                inSearchMoves = false;
+            } else if (inSearchMoves){
+                limits.addSearchMove(new Move(part, board.getSideToMove()));
+            }
+        }
+        return limits;
+    }
 
-        for (int i = 0; i < inputParts.length; i++){
-            if (inputParts[i].equals(side) && i + 1 < inputParts.length){
-                time = inputParts[i + 1];
+    private static final List<String> GO_PARAMETERS = List.of("searchmoves", "ponder", "wtime", "btime", "winc", "binc",
+            "movestogo", "depth", "nodes", "mate", "movetime", "infinite");
+
+    // setoption name <name> value <value>
+    public static void setOption(Engine engine, String input){
+        String[] inputParts = input.split(" ");
+        String name = "";
+        String value = "";
+        for (int i = 0; i < inputParts.length - 1; i++){
+            if (inputParts[i].equals("name")){
+                name = inputParts[i + 1];
+            }
+            if (inputParts[i].equals("value")){
+                value = inputParts[i + 1];
             }
         }
 
-        // Division factor
-        long remainingTime = Long.parseLong(time);
-        int divisionFactor;
-
-        if (remainingTime > 300000) {     // More than 5 minutes
-            divisionFactor = 50;         // Very conservative
-        } else if (remainingTime > 120000) { // 2-5 minutes
-            divisionFactor = 40;
-        } else if (remainingTime > 60000) {  // 1-2 minutes
-            divisionFactor = 30;
-        } else if (remainingTime > 30000) {  // 30-60 seconds
-            divisionFactor = 25;
-        } else {                           // Less than 30 seconds
-            divisionFactor = 20;           // Use time aggressively
+        // A bad value leaves the option as it was, the GUI only reads UCI replies so it goes to stderr
+        try {
+            switch (name.toLowerCase()){
+                case "threads" -> engine.setThreads(Integer.parseInt(value));
+                case "ponder" -> ponderEnabled = Boolean.parseBoolean(value);
+                case "multipv" -> engine.setMultiPV(Integer.parseInt(value));
+                case "lmrbase" -> engine.getLateMoveReductions().setBase(Integer.parseInt(value));
+                case "lmrdivisor" -> engine.getLateMoveReductions().setDivisor(Integer.parseInt(value));
+                case "lmrmindepth" -> engine.getLateMoveReductions().setMinDepth(Integer.parseInt(value));
+                case "lmrfulldepthmoves" -> engine.getLateMoveReductions().setFullDepthMoves(Integer.parseInt(value));
+                default -> System.err.println("Unknown option: " + name);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring option " + name + ": not a number: " + value);
         }
+    }
 
-        long timeLong = Long.parseLong(time)/divisionFactor;
-        // I don't want the bot to think pass 20 seconds
-        if (timeLong >= 20000){
-            return 20000;
+    // position [startpos | fen <fen>] [moves <move1> ... <movei>]
+    public static void setPosition(Board board, String input){
+        String[] inputParts = input.trim().split("\\s+");
+        String baseFen = START_FEN;
+        List<String> moves = new ArrayList<>();
+        int i = 1;
+        if (i < inputParts.length && inputParts[i].equals("fen")){
+            StringBuilder fen = new StringBuilder();
+            for (i = 2; i < inputParts.length && !inputParts[i].equals("moves"); i++){
+                fen.append(fen.length() > 0 ? " " : "").append(inputParts[i]);
+            }
+            baseFen = fen.toString();
+        }
+        for (; i < inputParts.length; i++){
+            if (inputParts[i].equals("moves")){
+                moves.addAll(Arrays.asList(inputParts).subList(i + 1, inputParts.length));
+                break;
+            }
+        }
+
+        // Same start and the old moves are a prefix of the new ones: only play what was added
+        boolean continuesGame = baseFen.equals(lastBaseFen) && moves.size() >= lastMoves.size()
+                && moves.subList(0, lastMoves.size()).equals(lastMoves);
+        if (!continuesGame){
+            board.loadFromFen(baseFen);
+            lastBaseFen = baseFen;
+            lastMoves.clear();
+        }
+        for (int m = lastMoves.size(); m < moves.size(); m++){
+            board.doMove(moves.get(m));
+            lastMoves.add(moves.get(m));
         }
-        return timeLong;
     }
 }
@@ -0,0 +1,61 @@
+package VersionTesterTools;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+import ChessEngine.EvalAccumulator;
+import ChessEngine.SimpleEval;
+
+import java.util.List;
+import java.util.Random;
+
+/*
+Plays random games and checks after every move (and every take back) that the incremental evaluation gives exactly
+the same value as the full SimpleEval.positionalEvaluation. Random games reach captures, promotions, en passant and
+castling often enough to cover every kind of update.
+ */
+public class EvalAccumulatorTester {
+    public static void main(String[] args) {
+        //Test params
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        Random random = new Random(seed);
+        // No eval cache, both evaluations have to be computed every time
+        SimpleEval simpleEval = new SimpleEval(0);
+        EvalAccumulator accumulator = new EvalAccumulator(simpleEval);
+        long checkedPositions = 0;
+        long mismatches = 0;
+
+        for (int game = 0; game < games; game++) {
+            Board board = new Board();
+            accumulator.reset(board);
+            int movesPlayed = 0;
+            while (movesPlayed < 200 && !board.isMated() && !board.isDraw()) {
+                List<Move> legalMoves = board.legalMoves();
+                Move move = legalMoves.get(random.nextInt(legalMoves.size()));
+                accumulator.push(board, move);
+                board.doMove(move);
+                movesPlayed++;
+                checkedPositions++;
+                if (simpleEval.positionalEvaluation(board) != simpleEval.positionalEvaluation(board, accumulator)) {
+                    mismatches++;
+                    System.out.println("Mismatch after " + move + " in " + board.getFen());
+                }
+            }
+            // Taking everything back has to land on the same values again
+            while (movesPlayed-- > 0) {
+                board.undoMove();
+                accumulator.pop();
+                checkedPositions++;
+                if (simpleEval.positionalEvaluation(board) != simpleEval.positionalEvaluation(board, accumulator)) {
+                    mismatches++;
+                    System.out.println("Mismatch after undo in " + board.getFen());
+                }
+            }
+        }
+
+        System.out.println("Games:" + games + " Positions checked:" + checkedPositions + " Mismatches:" + mismatches);
+        if (mismatches != 0) {
+            System.exit(1);
+        }
+    }
+}
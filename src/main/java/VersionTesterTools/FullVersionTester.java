@@ -5,6 +5,7 @@ import com.github.bhlangonijr.chesslib.Side;
 import com.github.bhlangonijr.chesslib.move.Move;
 import ChessEngine.Engine;
 import ChessEngine.OldEngine;
+import ChessEngine.SearchLimits;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -12,6 +13,9 @@ import java.io.IOException;
 
 public class FullVersionTester {
     public static void main (String [] args) throws IOException {
+        // Fixed depth so a run can be repeated move for move (single thread)
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+
         //Reader stuff
         FileReader fr = new FileReader("src/positions");
         BufferedReader br = new BufferedReader(fr);
@@ -42,7 +46,7 @@ public class FullVersionTester {
                 if (board.getSideToMove() == Side.WHITE) {
                     System.out.printf("\u001B[31mPosition number %d/%d\u001B[0m\n",i,1000);
                     System.out.println(board);
-                    engine_choice = engine.Think(board, 500);
+                    engine_choice = engine.Think(board, SearchLimits.depth(depth));
                     Move engineMove = engine_choice.move;
                     int engine_state_value = engine_choice.state_value;
                     board.doMove(engineMove);
@@ -50,7 +54,7 @@ public class FullVersionTester {
                 } else {
                     System.out.printf("\u001B[31mPosition number %d/%d\u001B[0m\n",i,1000);
                     System.out.println(board);
-                    oldEngineChoice = oldEngine.Think(board, 500);
+                    oldEngineChoice = oldEngine.Think(board, SearchLimits.depth(depth));
                     Move engineMove = oldEngineChoice.move;
                     int oldEngineValue = oldEngineChoice.state_value;
                     board.doMove(engineMove);
@@ -0,0 +1,88 @@
+package VersionTesterTools;
+
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+import ChessEngine.FLAG;
+import ChessEngine.TranspositionTable;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Hammers one shared TranspositionTable from many threads at once.
+Every key always gets stored with the same move and value (both derived from the key), only the depth changes.
+So whenever a probe hits, the move and value must be the ones belonging to that key, anything else is a torn entry
+that would have been handed to Engine.Search.
+ */
+public class TTStressTester {
+    public static void main(String[] args) throws InterruptedException {
+        //Test params
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long runTime = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+        // 64 keys squeezed into the first 8 buckets (32 slots) so threads keep overwriting the same slots under each other
+        TranspositionTable TT = new TranspositionTable(1);
+        long[] keys = new long[64];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (ThreadLocalRandom.current().nextLong() & ~0xFFFFFL) | (i & 7);
+        }
+
+        //Counters
+        AtomicLong stores = new AtomicLong();
+        AtomicLong probes = new AtomicLong();
+        AtomicLong hits = new AtomicLong();
+        AtomicLong corrupted = new AtomicLong();
+
+        long deadline = System.currentTimeMillis() + runTime;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long localStores = 0, localProbes = 0, localHits = 0, localCorrupted = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    for (int i = 0; i < 10000; i++) {
+                        long key = keys[random.nextInt(keys.length)];
+                        if (random.nextBoolean()) {
+                            TT.store(key, random.nextInt(1, 64), expectedValue(key), FLAG.EXACT, expectedMove(key));
+                            localStores++;
+                        } else {
+                            long entry = TT.probe(key);
+                            localProbes++;
+                            if (entry == TranspositionTable.EMPTY) {continue;}
+                            localHits++;
+                            if (TranspositionTable.getPackedMove(entry) != TranspositionTable.encodeMove(expectedMove(key))
+                                    || TranspositionTable.getValue(entry) != expectedValue(key)) {
+                                localCorrupted++;
+                            }
+                        }
+                    }
+                }
+                stores.addAndGet(localStores);
+                probes.addAndGet(localProbes);
+                hits.addAndGet(localHits);
+                corrupted.addAndGet(localCorrupted);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.println("Threads:" + threads + " Stores:" + stores + " Probes:" + probes + " Hits:" + hits);
+        System.out.println("Corrupted entries returned:" + corrupted);
+        if (corrupted.get() != 0) {
+            System.exit(1);
+        }
+    }
+
+    // A made up but fixed move for every key
+    private static Move expectedMove(long key) {
+        int from = (int) (key & 63);
+        int to = (from + 1 + (int) ((key >>> 6) & 0x7FFF) % 63) % 64;
+        return new Move(Square.squareAt(from), Square.squareAt(to), Piece.NONE);
+    }
+
+    private static int expectedValue(long key) {
+        return (int) (key >>> 40) - (1 << 23);
+    }
+}
@@ -5,9 +5,12 @@ import com.github.bhlangonijr.chesslib.Side;
 import com.github.bhlangonijr.chesslib.move.Move;
 import ChessEngine.Engine;
 import ChessEngine.OldEngine;
+import ChessEngine.SearchLimits;
 
 public class VersionTester {
     public static void main(String [] args){
+        // Fixed depth so a run can be repeated move for move (single thread)
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
         Board board = new Board();
         OldEngine oldEngine = new OldEngine();
         Engine engine = new Engine();
@@ -16,14 +19,14 @@ public class VersionTester {
             while (!board.isMated() && !board.isDraw() && !board.isStaleMate()) {
                 if (board.getSideToMove() == Side.BLACK) {
                     System.out.println(board);
-                    engine_choice = engine.Think(board, 1000);
+                    engine_choice = engine.Think(board, SearchLimits.depth(depth));
                     Move engineMove = engine_choice.move;
                     int engine_state_value = engine_choice.state_value;
                     board.doMove(engineMove);
                     System.out.println("Engine move:" + engineMove + " State value:" + (float) engine_state_value / 100 + " Depth:" + engine_choice.depth);
                 } else {
                     System.out.println(board);
-                    oldEngineChoice = oldEngine.Think(board, 1000);
+                    oldEngineChoice = oldEngine.Think(board, SearchLimits.depth(depth));
                     Move engineMove = oldEngineChoice.move;
                     int oldEngineValue = oldEngineChoice.state_value;
                     board.doMove(engineMove);